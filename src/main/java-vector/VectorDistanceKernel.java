@@ -0,0 +1,114 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/* DistanceKernel over SIMD lanes with the incubating Vector API (Java 17, compiled by
+ * the vector profile). A vector holds one attribute of as many points as there are
+ * lanes, so every centroid is compared to a whole vector of points with a subtract, a
+ * multiply and an add per attribute, and the running minimum and its centroid are kept
+ * per lane with a compare and two blends. Lanes are doubles, not floats: floats would
+ * fit twice as many points per vector but round differently, and clusterings must not
+ * depend on the kernel. Points left over at the end of the block go through the scalar
+ * loop. */
+public class VectorDistanceKernel extends DistanceKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // public for DistanceKernel's reflection
+    public VectorDistanceKernel() {
+    }
+
+    @Override
+    public String getName() {
+        return "vector, " + SPECIES.length() + " doubles";
+    }
+
+    // the crossover moves with the lanes, 512 centroids with 8 (DistanceKernelBenchmark)
+    @Override
+    public int getIndexMinK() {
+        return 64 * SPECIES.length();
+    }
+
+    @Override
+    public void nearest(double[] values, int from, int to, int dimensions, double[] centroids, int K, int[] nearest, double[] distances) {
+        int lanes = SPECIES.length();
+        int blocked = SPECIES.loopBound(to - from);
+        // a vector of points attribute by attribute, and the centroid each lane picked
+        double[] columns = new double[dimensions * lanes];
+        double[] closest = new double[lanes];
+
+        for (int p = 0; p < blocked; p += lanes) {
+            int base = (from + p) * dimensions;
+            for (int lane = 0; lane < lanes; lane++) {
+                for (int d = 0; d < dimensions; d++) {
+                    columns[d * lanes + lane] = values[base + lane * dimensions + d];
+                }
+            }
+
+            DoubleVector best = dimensions == 4
+                    ? nearest4(columns, centroids, K, closest)
+                    : nearestAny(columns, dimensions, centroids, K, closest);
+
+            best.intoArray(distances, p);
+            for (int lane = 0; lane < lanes; lane++) {
+                nearest[p + lane] = (int) closest[lane];
+            }
+        }
+
+        for (int i = from + blocked; i < to; i++) {
+            nearestOne(values, i, i - from, dimensions, centroids, K, nearest, distances);
+        }
+    }
+
+    // colors have 4 attributes, kept in registers for the whole scan
+    private static DoubleVector nearest4(double[] columns, double[] centroids, int K, double[] closest) {
+        int lanes = SPECIES.length();
+        DoubleVector p0 = DoubleVector.fromArray(SPECIES, columns, 0);
+        DoubleVector p1 = DoubleVector.fromArray(SPECIES, columns, lanes);
+        DoubleVector p2 = DoubleVector.fromArray(SPECIES, columns, 2 * lanes);
+        DoubleVector p3 = DoubleVector.fromArray(SPECIES, columns, 3 * lanes);
+        DoubleVector best = DoubleVector.broadcast(SPECIES, Double.MAX_VALUE);
+        DoubleVector bestCentroid = DoubleVector.zero(SPECIES);
+
+        for (int c = 0; c < K; c++) {
+            int offset = c * 4;
+            DoubleVector diff = p0.sub(centroids[offset]);
+            DoubleVector sum = diff.mul(diff);
+            diff = p1.sub(centroids[offset + 1]);
+            sum = sum.add(diff.mul(diff));
+            diff = p2.sub(centroids[offset + 2]);
+            sum = sum.add(diff.mul(diff));
+            diff = p3.sub(centroids[offset + 3]);
+            sum = sum.add(diff.mul(diff));
+
+            // strictly closer, so ties keep the first centroid and NaN never wins
+            VectorMask<Double> closer = sum.lt(best);
+            best = best.blend(sum, closer);
+            bestCentroid = bestCentroid.blend(c, closer);
+        }
+
+        bestCentroid.intoArray(closest, 0);
+        return best;
+    }
+
+    private static DoubleVector nearestAny(double[] columns, int dimensions, double[] centroids, int K, double[] closest) {
+        int lanes = SPECIES.length();
+        DoubleVector best = DoubleVector.broadcast(SPECIES, Double.MAX_VALUE);
+        DoubleVector bestCentroid = DoubleVector.zero(SPECIES);
+
+        for (int c = 0; c < K; c++) {
+            int offset = c * dimensions;
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            for (int d = 0; d < dimensions; d++) {
+                DoubleVector diff = DoubleVector.fromArray(SPECIES, columns, d * lanes).sub(centroids[offset + d]);
+                sum = sum.add(diff.mul(diff));
+            }
+
+            VectorMask<Double> closer = sum.lt(best);
+            best = best.blend(sum, closer);
+            bestCentroid = bestCentroid.blend(c, closer);
+        }
+
+        bestCentroid.intoArray(closest, 0);
+        return best;
+    }
+}
@@ -0,0 +1,585 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/* Headless batch mode: splits every image of a directory (or matching a glob) into its
+ * color layers, each image into a sub directory of the output directory named after it.
+ * Images go through decode, histogram, cluster and render/encode as a pipeline of tasks
+ * on one shared ForkJoinPool, so one image can be clustered while the layers of the
+ * previous one are encoded. At most maxImages images are in flight at once, the others
+ * wait their turn. A failing image is reported and does not stop the batch.
+ * report.csv in the output directory gives the time each stage took for every image,
+ * and metrics.json in the directory of every image the details of its job (see
+ * JobMetrics), which are also JFR events when a flight recording is running.
+ * In frame sequence mode the images are frames of one video in name order, each one is
+ * clustered starting from the centroids of the previous one (see FrameSequence), only
+ * the cluster stage then waits for the previous frame.
+ * In tiled mode every image is split by a TiledSplitter, decoded one band at a time
+ * twice, so that images bigger than the heap get through. Tiled images write FULL
+ * layers and are not cached.
+ * In region mode every image is first cut into about that many superpixels (see
+ * Superpixels) and the regions, not the colors, are clustered, so layers are made of
+ * contiguous areas instead of scattered pixels. Region clusterings are not cached.
+ * In mini-batch mode every image is clustered by MiniBatchKMeans on batches of pixels
+ * drawn from its histogram, for a fixed budget of batches, then every color goes to
+ * its nearest centroid. Faster on images with many colors, at a somewhat higher SSE.
+ * Mini-batch clusterings are not cached either.
+ * With a ResultCache the histogram of an image already seen is read back instead of
+ * decoding it, and so is its clustering when K, the seed, the algorithm and the color
+ * space are the same (frame sequences only cache histograms, their clustering depends on the frames
+ * before). The seed is fixed by default so that repeat runs can hit the cache.
+ * Run with: java -cp target/classes BatchProcessor <input directory or glob> <output directory> [K] [threads] [--frames] [--cache <directory>] [--space rgb|oklab|cielab] [--regions <count>] [--tiled] [--minibatch <batch size> <batches>] */
+public class BatchProcessor {
+    static final String REPORT = "report.csv";
+    static final String METRICS = "metrics.json";
+    static final long DEFAULT_CACHE_BYTES = 1L << 30;
+
+    private final int K;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxImages = 2;
+    private long seed = 0;
+    private KMeans.Algorithm algorithm = KMeans.Algorithm.HAMERLY;
+    private ColorSpace colorSpace = ColorSpace.RGB;
+    private LayerWriter.Mode mode = LayerWriter.Mode.FULL;
+    private boolean frameSequence;
+    private boolean tiled;
+    private int regions;
+    private int miniBatchSize;
+    private int miniBatches;
+    private ResultCache cache;
+
+    public BatchProcessor(int K) {
+        if (K <= 0) {
+            throw new IllegalArgumentException("K must be positive.");
+        }
+
+        this.K = K;
+    }
+
+    public BatchProcessor setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed.");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /* Maximum number of images decoded and not yet written at once */
+    public BatchProcessor setMaxImages(int maxImages) {
+        if (maxImages < 1) {
+            throw new IllegalArgumentException("At least one image must be processed at a time.");
+        }
+        this.maxImages = maxImages;
+        return this;
+    }
+
+    public BatchProcessor setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public BatchProcessor setAlgorithm(KMeans.Algorithm algorithm) {
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    public BatchProcessor setColorSpace(ColorSpace colorSpace) {
+        this.colorSpace = colorSpace;
+        return this;
+    }
+
+    public BatchProcessor setMode(LayerWriter.Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public BatchProcessor setFrameSequence(boolean frameSequence) {
+        this.frameSequence = frameSequence;
+        return this;
+    }
+
+    /* Splits images with a TiledSplitter, for images too big to decode whole */
+    public BatchProcessor setTiled(boolean tiled) {
+        this.tiled = tiled;
+        return this;
+    }
+
+    /* Number of superpixels to cluster instead of colors, 0 clusters colors. Works best
+     * in a perceptual color space, see Superpixels.setCompactness */
+    public BatchProcessor setRegions(int regions) {
+        if (regions < 0) {
+            throw new IllegalArgumentException("The number of regions can not be negative.");
+        }
+
+        this.regions = regions;
+        return this;
+    }
+
+    /* Clusters with MiniBatchKMeans, that many batches of batchSize pixels per image.
+     * A batch size of 0 clusters with the full K-Means */
+    public BatchProcessor setMiniBatch(int batchSize, int batches) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("The batch size can not be negative.");
+        }
+        if (batchSize > 0 && batchSize < K) {
+            throw new IllegalArgumentException("The batch size can not be smaller than K.");
+        }
+        if (batchSize > 0 && batches < 1) {
+            throw new IllegalArgumentException("At least one batch is needed.");
+        }
+
+        this.miniBatchSize = batchSize;
+        this.miniBatches = batches;
+        return this;
+    }
+
+    /* Null to disable caching */
+    public BatchProcessor setCache(ResultCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    // the frame sequence and the cluster stage of the last frame submitted
+    private static class FrameChain {
+        final FrameSequence sequence;
+        CompletableFuture<?> last = CompletableFuture.completedFuture(null);
+
+        FrameChain(FrameSequence sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /* Time spent in every stage of one image, in nanoseconds */
+    public static class ImageReport {
+        private final Path input;
+        private final JobMetrics metrics;
+        private int width;
+        private int height;
+        private int colors;
+        private int iterations;
+        private long decodeNanos;
+        private long histogramNanos;
+        private long clusterNanos;
+        private long outputNanos;
+        private long totalNanos;
+        private String error;
+        private String contentHash;
+        private String cached = "";
+
+        ImageReport(Path input) {
+            this.input = input;
+            this.metrics = new JobMetrics(input.toString());
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public JobMetrics getMetrics() {
+            return metrics;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        static String header() {
+            return "file,width,height,colors,iterations,decode_ms,histogram_ms,cluster_ms,output_ms,total_ms,cached,error";
+        }
+
+        String toCsv() {
+            return input + "," + width + "," + height + "," + colors + "," + iterations + ","
+                    + millis(decodeNanos) + "," + millis(histogramNanos) + "," + millis(clusterNanos) + ","
+                    + millis(outputNanos) + "," + millis(totalNanos) + "," + cached + "," + (error == null ? "" : error.replace(',', ';'));
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+        }
+    }
+
+    /* Every readable image of a directory, or every file matching a glob such as
+     * images/*.png or frames/**.bmp, in name order */
+    public static List<Path> listInputs(String directoryOrGlob) throws IOException {
+        int firstGlob = 0;
+        while (firstGlob < directoryOrGlob.length() && "*?[{".indexOf(directoryOrGlob.charAt(firstGlob)) < 0) {
+            firstGlob++;
+        }
+
+        Path root;
+        PathMatcher matcher;
+        int depth;
+        if (firstGlob < directoryOrGlob.length()) {
+            // walk from the last directory before the first wildcard
+            int separator = directoryOrGlob.lastIndexOf('/', firstGlob);
+            root = Paths.get(separator < 0 ? "" : directoryOrGlob.substring(0, separator + 1));
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + directoryOrGlob);
+            depth = Integer.MAX_VALUE;
+        } else {
+            root = Paths.get(directoryOrGlob);
+            if (!Files.isDirectory(root)) {
+                throw new IOException(root + " is not a directory.");
+            }
+            Set<String> suffixes = new HashSet<>();
+            for (String suffix : ImageIO.getReaderFileSuffixes()) {
+                suffixes.add(suffix.toLowerCase(Locale.ROOT));
+            }
+            matcher = file -> {
+                String name = file.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                return dot >= 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+            };
+            depth = 1;
+        }
+
+        try (Stream<Path> files = Files.walk(root, depth)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /* Processes the images and writes report.csv, returns the reports in input order */
+    public List<ImageReport> process(List<Path> inputs, Path outputDirectory) throws IOException {
+        if (frameSequence && regions > 0) {
+            throw new IllegalStateException("Frame sequences cluster colors, not regions.");
+        }
+        if (tiled && (frameSequence || regions > 0 || mode != LayerWriter.Mode.FULL)) {
+            throw new IllegalStateException("Tiled images are split on their own into full size layers.");
+        }
+        if (miniBatchSize > 0 && (frameSequence || regions > 0 || tiled)) {
+            throw new IllegalStateException("Mini-batch K-Means clusters the colors of one image at a time.");
+        }
+        Files.createDirectories(outputDirectory);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Semaphore inFlight = new Semaphore(maxImages);
+        List<ImageReport> reports = new ArrayList<>();
+        List<CompletableFuture<Void>> pipelines = new ArrayList<>();
+        FrameChain frames = !frameSequence ? null : new FrameChain(new FrameSequence(K)
+                .setAlgorithm(algorithm)
+                .setColorSpace(colorSpace)
+                .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, seed))
+                .setPool(pool));
+
+        try {
+            for (Path input : inputs) {
+                inFlight.acquire();
+                ImageReport report = new ImageReport(input);
+                reports.add(report);
+
+                CompletableFuture<Void> pipeline;
+                try {
+                    Path directory = outputDirectory.resolve(outputName(input));
+                    pipeline = tiled ? splitTiled(input, directory, report, pool) : pipeline(input, directory, report, pool, frames);
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                pipelines.add(pipeline.whenComplete((done, failure) -> inFlight.release()));
+            }
+
+            CompletableFuture.allOf(pipelines.toArray(new CompletableFuture<?>[0])).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing images.", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputDirectory.resolve(REPORT).toFile()))) {
+            out.println(ImageReport.header());
+            for (ImageReport report : reports) {
+                out.println(report.toCsv());
+            }
+            if (out.checkError()) {
+                throw new IOException("Could not write " + REPORT + ".");
+            }
+        }
+        for (ImageReport report : reports) {
+            Path directory = outputDirectory.resolve(outputName(report.input));
+            Files.createDirectories(directory);
+            report.metrics.writeJson(directory.resolve(METRICS));
+        }
+
+        return reports;
+    }
+
+    private static String outputName(Path input) {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private CompletableFuture<Void> pipeline(Path input, Path outputDirectory, ImageReport report, ForkJoinPool pool, FrameChain frames) {
+        CompletableFuture<ColorHistogram> histogram = CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(input, report);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool);
+
+        CompletableFuture<LayerRenderer> clustered;
+        if (frames == null) {
+            clustered = histogram.thenApplyAsync(colors -> cluster(colors, null, report, pool), pool);
+        } else {
+            clustered = histogram.thenCombineAsync(frames.last, (colors, previous) -> cluster(colors, frames.sequence, report, pool), pool);
+            // a failed frame does not stop the next one, it starts from the last good centroids
+            frames.last = clustered.handle((renderer, failure) -> null);
+        }
+
+        return clustered.thenComposeAsync(renderer -> {
+            JobMetrics.Stage stage = report.metrics.stage("output");
+            try {
+                Files.createDirectories(outputDirectory);
+            } catch (IOException e) {
+                report.outputNanos = stage.stop();
+                throw new UncheckedIOException(e);
+            }
+            LayerWriter writer = new LayerWriter(outputDirectory.toFile()).setMode(mode).setMaxBuffers(threads + 1);
+            // failed or not, the layers written so far are part of the job
+            return writer.writeAsync(renderer, pool).whenComplete((done, failure) -> {
+                report.outputNanos = stage.stop();
+                report.metrics.addBytesWritten(writer.getBytesWritten());
+            });
+        }, pool).handle((done, failure) -> finish(report, failure));
+    }
+
+    /* The whole split of a tiled image is one task, its layers are encoded on the pool */
+    private CompletableFuture<Void> splitTiled(Path input, Path outputDirectory, ImageReport report, ForkJoinPool pool) {
+        TiledSplitter splitter = new TiledSplitter(K)
+                .setAlgorithm(algorithm)
+                .setColorSpace(colorSpace)
+                .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, seed))
+                .setPool(pool);
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Files.createDirectories(outputDirectory);
+                splitter.split(input.toFile(), outputDirectory.toFile(), report.metrics);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            // decoding is part of the histogram and output passes
+            JobMetrics metrics = report.metrics;
+            report.width = metrics.getWidth();
+            report.height = metrics.getHeight();
+            report.colors = metrics.getColors();
+            report.iterations = metrics.getIterations();
+            report.histogramNanos = metrics.getStageNanos("histogram");
+            report.clusterNanos = metrics.getStageNanos("palette") + metrics.getStageNanos("cluster");
+            report.outputNanos = metrics.getStageNanos("output");
+        }, pool).handle((done, failure) -> finish(report, failure));
+    }
+
+    private static Void finish(ImageReport report, Throwable failure) {
+        report.metrics.finish();
+        report.totalNanos = report.metrics.getTotalNanos();
+        if (failure != null) {
+            Throwable cause = failure;
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            report.error = (cause instanceof UncheckedIOException ? cause.getCause() : cause).toString();
+        }
+        return null;
+    }
+
+    /* Decodes the image and builds its histogram, or reads the histogram from the cache */
+    private ColorHistogram load(Path input, ImageReport report) throws IOException {
+        JobMetrics.Stage stage = report.metrics.stage("decode");
+        BufferedImage image = null;
+        ColorHistogram cached = null;
+        try {
+            if (cache == null) {
+                image = ImageLoader.read(input.toFile());
+            } else {
+                byte[] content = Files.readAllBytes(input);
+                report.contentHash = ResultCache.contentHash(content);
+
+                cached = cache.getHistogram(report.contentHash);
+                if (cached != null) {
+                    report.cached = "histogram";
+                } else {
+                    image = ImageLoader.read(new ByteArrayInputStream(content), input.toString());
+                }
+            }
+        } finally {
+            report.decodeNanos = stage.stop();
+        }
+        if (cached != null) {
+            return describe(cached, report);
+        }
+
+        stage = report.metrics.stage("histogram");
+        ColorHistogram result;
+        try {
+            result = ColorHistogram.fromImage(image);
+            if (cache != null) {
+                cache.putHistogram(report.contentHash, result);
+            }
+        } finally {
+            report.histogramNanos = stage.stop();
+        }
+        return describe(result, report);
+    }
+
+    private static ColorHistogram describe(ColorHistogram histogram, ImageReport report) {
+        report.width = histogram.getWidth();
+        report.height = histogram.getHeight();
+        report.colors = histogram.size();
+        report.metrics.describe(report.width, report.height, report.colors);
+        return histogram;
+    }
+
+    private LayerRenderer cluster(ColorHistogram colors, FrameSequence sequence, ImageReport report, ForkJoinPool pool) {
+        JobMetrics.Stage stage = report.metrics.stage("cluster");
+        try {
+            return cluster(colors, sequence, report, pool, stage);
+        } finally {
+            // already stopped by a clustering that went through, a failed one counts too
+            report.clusterNanos = stage.stop();
+        }
+    }
+
+    /* Stops the stage once the clusters are known, building the layers is not part of it */
+    private LayerRenderer cluster(ColorHistogram colors, FrameSequence sequence, ImageReport report, ForkJoinPool pool, JobMetrics.Stage stage) {
+        if (regions > 0) {
+            Superpixels.Segmentation segmentation = report.metrics.time("segment",
+                    () -> new Superpixels(regions).setColorSpace(colorSpace).setPool(pool).segment(colors));
+            PointSet points = segmentation.toPointSet();
+            KMeansResult result = new KMeans(Math.min(K, points.size()))
+                    .setAlgorithm(algorithm)
+                    .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, seed))
+                    .setPool(pool)
+                    .addListener(report.metrics)
+                    .run(points);
+            report.iterations = result.getIterations();
+            report.clusterNanos = stage.stop();
+            return LayerRenderer.fromPixelClusters(colors, segmentation.toPixelClusters(result.getAssignments()));
+        }
+
+        if (miniBatchSize > 0) {
+            MiniBatchKMeans miniBatch = new MiniBatchKMeans(Math.min(K, colors.size()), seed)
+                    .setBatchSize(miniBatchSize)
+                    .setMaxIterations(miniBatches);
+            report.iterations = miniBatch.partialFit(new ColorMapSampler(colors).setColorSpace(colorSpace));
+            int[] assignments = miniBatch.predict(new DataSet(colors, colorSpace).toPointSet());
+            report.clusterNanos = stage.stop();
+            return new LayerRenderer(colors, assignments);
+        }
+
+        KMeansResult result;
+        if (sequence != null) {
+            result = sequence.next(colors, report.metrics);
+        } else {
+            String parameters = "K=" + K + ";seed=" + seed + ";algorithm=" + algorithm + ";seeding=" + Seeding.Method.KMEANS_PLUS_PLUS + ";space=" + colorSpace;
+            result = cache == null ? null : cache.getResult(report.contentHash, parameters);
+
+            if (result != null && result.getAssignments().length == colors.size()) {
+                report.cached = "histogram and result";
+            } else {
+                PointSet points = new DataSet(colors, colorSpace).toPointSet();
+                result = new KMeans(Math.min(K, colors.size()))
+                        .setAlgorithm(algorithm)
+                        .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, seed))
+                        .setPool(pool)
+                        .addListener(report.metrics)
+                        .run(points);
+                if (cache != null) {
+                    try {
+                        cache.putResult(report.contentHash, parameters, result, points.getDimensions());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
+        report.iterations = result.getIterations();
+        report.clusterNanos = stage.stop();
+        return new LayerRenderer(colors, result.getAssignments());
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        boolean frames = arguments.remove("--frames");
+        boolean tiled = arguments.remove("--tiled");
+        String cacheDirectory = null;
+        int cacheFlag = arguments.indexOf("--cache");
+        if (cacheFlag >= 0 && cacheFlag + 1 < arguments.size()) {
+            cacheDirectory = arguments.get(cacheFlag + 1);
+            arguments.subList(cacheFlag, cacheFlag + 2).clear();
+        }
+        String regions = "0";
+        int regionsFlag = arguments.indexOf("--regions");
+        if (regionsFlag >= 0 && regionsFlag + 1 < arguments.size()) {
+            regions = arguments.get(regionsFlag + 1);
+            arguments.subList(regionsFlag, regionsFlag + 2).clear();
+        }
+        String[] miniBatch = null;
+        int miniBatchFlag = arguments.indexOf("--minibatch");
+        if (miniBatchFlag >= 0 && miniBatchFlag + 2 < arguments.size()) {
+            miniBatch = new String[]{arguments.get(miniBatchFlag + 1), arguments.get(miniBatchFlag + 2)};
+            arguments.subList(miniBatchFlag, miniBatchFlag + 3).clear();
+        }
+        String space = null;
+        int spaceFlag = arguments.indexOf("--space");
+        if (spaceFlag >= 0 && spaceFlag + 1 < arguments.size()) {
+            space = arguments.get(spaceFlag + 1);
+            arguments.subList(spaceFlag, spaceFlag + 2).clear();
+        }
+        args = arguments.toArray(new String[0]);
+
+        if (args.length < 2) {
+            System.out.println("Usage: BatchProcessor <input directory or glob> <output directory> [K] [threads] [--frames] [--cache <directory>] [--space rgb|oklab|cielab] [--regions <count>] [--tiled] [--minibatch <batch size> <batches>]");
+            return;
+        }
+
+        try {
+            BatchProcessor processor = new BatchProcessor(args.length > 2 ? Integer.parseInt(args[2]) : 20).setFrameSequence(frames).setTiled(tiled).setRegions(Integer.parseInt(regions));
+            if (args.length > 3) {
+                processor.setThreads(Integer.parseInt(args[3]));
+            }
+            if (miniBatch != null) {
+                processor.setMiniBatch(Integer.parseInt(miniBatch[0]), Integer.parseInt(miniBatch[1]));
+            }
+            if (space != null) {
+                processor.setColorSpace(ColorSpace.parse(space));
+            }
+            if (cacheDirectory != null) {
+                processor.setCache(new ResultCache(Paths.get(cacheDirectory), DEFAULT_CACHE_BYTES));
+            }
+
+            List<Path> inputs = listInputs(args[0]);
+            System.out.println("Processing " + inputs.size() + " images.");
+
+            long start = System.nanoTime();
+            List<ImageReport> reports = processor.process(inputs, Paths.get(args[1]));
+
+            for (ImageReport report : reports) {
+                System.out.println(report.getInput() + ": " + (report.isFailed() ? "failed, " + report.getError() : String.format(Locale.ROOT, "%.1f ms", report.getTotalNanos() / 1e6)));
+            }
+            System.out.printf(Locale.ROOT, "Processed %d images in %.1f ms, see %s.%n", reports.size(), (System.nanoTime() - start) / 1e6, Paths.get(args[1]).resolve(REPORT));
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+}
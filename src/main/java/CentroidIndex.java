@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/* KD-tree over a set of centroids in the interleaved layout, answering nearest centroid
+ * queries without scanning all K of them. The tree is an implicit balanced one: the
+ * centroids of a range are sorted on the attribute they spread the most along and the
+ * median one is the node, the lower half its left subtree and the upper half its right
+ * one. Building it costs a few sorts of K indices, so it is rebuilt whenever the
+ * centroids move (once per K-Means iteration).
+ * Lookups are exact and give the same answer as a linear scan, ties going to the
+ * lowest centroid index, so clustering with or without the index gives the same
+ * assignments. NaN centroids never win a comparison and are left out of the tree. */
+public class CentroidIndex {
+    private final double[] centroids;
+    private final int dimensions;
+    // centroid indices in tree order, the node of range [from, to) is at (from + to) / 2
+    private final int[] nodes;
+    private final int[] splitAttributes;
+
+    public CentroidIndex(double[] centroids, int dimensions) {
+        if (dimensions <= 0 || centroids.length % dimensions != 0) {
+            throw new IllegalArgumentException("Centroids do not have " + dimensions + " attributes.");
+        }
+
+        this.centroids = centroids;
+        this.dimensions = dimensions;
+
+        int K = centroids.length / dimensions;
+        int size = 0;
+        int[] nodes = new int[K];
+        for (int c = 0; c < K; c++) {
+            if (!isNaN(c)) {
+                nodes[size++] = c;
+            }
+        }
+        this.nodes = Arrays.copyOf(nodes, size);
+        this.splitAttributes = new int[size];
+        build(0, size);
+    }
+
+    private boolean isNaN(int centroid) {
+        for (int d = 0; d < dimensions; d++) {
+            if (Double.isNaN(centroids[centroid * dimensions + d])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void build(int from, int to) {
+        if (to - from < 1) {
+            return;
+        }
+
+        int split = 0;
+        double widest = -1.0;
+        for (int d = 0; d < dimensions; d++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double value = centroids[nodes[i] * dimensions + d];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                split = d;
+            }
+        }
+
+        // insertion sort, ranges are a few hundred centroids at most
+        for (int i = from + 1; i < to; i++) {
+            int node = nodes[i];
+            double value = centroids[node * dimensions + split];
+            int j = i - 1;
+            while (j >= from && centroids[nodes[j] * dimensions + split] > value) {
+                nodes[j + 1] = nodes[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+        }
+
+        int middle = (from + to) >>> 1;
+        splitAttributes[middle] = split;
+        build(from, middle);
+        build(middle + 1, to);
+    }
+
+    /* Index of the centroid closest to the point starting at values[offset], the squared
+     * distance to it is left in distance[0]. Same result as KMeans.nearestCentroid */
+    public int nearest(double[] values, int offset, double[] distance) {
+        return nearest(values, offset, distance, null);
+    }
+
+    /* Same as above, adding the number of distances computed to evaluations[0] unless
+     * evaluations is null */
+    public int nearest(double[] values, int offset, double[] distance, long[] evaluations) {
+        distance[0] = Double.MAX_VALUE;
+        return nearest(values, offset, 0, nodes.length, 0, distance, evaluations);
+    }
+
+    private int nearest(double[] values, int offset, int from, int to, int best, double[] distance, long[] evaluations) {
+        if (from >= to) {
+            return best;
+        }
+
+        int middle = (from + to) >>> 1;
+        int node = nodes[middle];
+        double dist = squaredDistance(values, offset, node);
+        if (evaluations != null) {
+            evaluations[0]++;
+        }
+        if (dist < distance[0] || dist == distance[0] && node < best) {
+            distance[0] = dist;
+            best = node;
+        }
+
+        int split = splitAttributes[middle];
+        double diff = values[offset + split] - centroids[node * dimensions + split];
+        if (diff < 0.0) {
+            best = nearest(values, offset, from, middle, best, distance, evaluations);
+            if (diff * diff <= distance[0]) {
+                best = nearest(values, offset, middle + 1, to, best, distance, evaluations);
+            }
+        } else {
+            best = nearest(values, offset, middle + 1, to, best, distance, evaluations);
+            if (diff * diff <= distance[0]) {
+                best = nearest(values, offset, from, middle, best, distance, evaluations);
+            }
+        }
+        return best;
+    }
+
+    /* Index of the closest centroid with the squared distances to the closest and the
+     * second closest centroid left in distances[0] and distances[1], as Hamerly's
+     * bounds need them */
+    public int nearestTwo(double[] values, int offset, double[] distances) {
+        return nearestTwo(values, offset, distances, null);
+    }
+
+    /* Same as above, counting distances like nearest does */
+    public int nearestTwo(double[] values, int offset, double[] distances, long[] evaluations) {
+        distances[0] = Double.POSITIVE_INFINITY;
+        distances[1] = Double.POSITIVE_INFINITY;
+        return nearestTwo(values, offset, 0, nodes.length, 0, distances, evaluations);
+    }
+
+    private int nearestTwo(double[] values, int offset, int from, int to, int best, double[] distances, long[] evaluations) {
+        if (from >= to) {
+            return best;
+        }
+
+        int middle = (from + to) >>> 1;
+        int node = nodes[middle];
+        double dist = squaredDistance(values, offset, node);
+        if (evaluations != null) {
+            evaluations[0]++;
+        }
+        if (dist < distances[0] || dist == distances[0] && node < best) {
+            distances[1] = distances[0];
+            distances[0] = dist;
+            best = node;
+        } else if (dist < distances[1]) {
+            distances[1] = dist;
+        }
+
+        int split = splitAttributes[middle];
+        double diff = values[offset + split] - centroids[node * dimensions + split];
+        if (diff < 0.0) {
+            best = nearestTwo(values, offset, from, middle, best, distances, evaluations);
+            if (diff * diff <= distances[1]) {
+                best = nearestTwo(values, offset, middle + 1, to, best, distances, evaluations);
+            }
+        } else {
+            best = nearestTwo(values, offset, middle + 1, to, best, distances, evaluations);
+            if (diff * diff <= distances[1]) {
+                best = nearestTwo(values, offset, from, middle, best, distances, evaluations);
+            }
+        }
+        return best;
+    }
+
+    // same summation order as PointSet.squaredDistance, so distances compare equal to a scan's
+    private double squaredDistance(double[] values, int offset, int centroid) {
+        int centroidOffset = centroid * dimensions;
+        double sum = 0.0;
+
+        for (int d = 0; d < dimensions; d++) {
+            double diff = values[offset + d] - centroids[centroidOffset + d];
+            sum += diff * diff;
+        }
+
+        return sum;
+    }
+
+    /* Nearest centroid of every color of the histogram, the centroids having DataSet's
+     * Red, Green, Blue, Alpha attributes. Maps the pixels of an image to layers from
+     * centroids fit on another set of colors (a reduced palette, a sample, the
+     * previous frame...) */
+    public int[] assign(ColorHistogram histogram) {
+        return assign(histogram, ColorSpace.RGB);
+    }
+
+    /* Same as above for centroids fit in the given color space */
+    public int[] assign(ColorHistogram histogram, ColorSpace space) {
+        if (dimensions != 4) {
+            throw new IllegalStateException("Colors have 4 attributes, the centroids " + dimensions + ".");
+        }
+
+        int[] clusters = new int[histogram.size()];
+        double[] color = new double[4];
+        double[] distance = new double[1];
+
+        for (int c = 0; c < clusters.length; c++) {
+            space.toPoint(histogram.getColor(c), color, 0);
+            clusters[c] = nearest(color, 0, distance);
+        }
+
+        return clusters;
+    }
+
+    /* Number of centroids in the tree, NaN ones excluded */
+    public int size() {
+        return nodes.length;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+}
@@ -0,0 +1,204 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/* Compact color index of an image. Every distinct packed ARGB color gets an index
+ * (in the order colors are first met), the image itself is kept as one color index
+ * per pixel (labels[y * width + x], -1 for pixels without a color) and the pixel
+ * count of every color. That is 4 bytes per pixel plus a few per distinct color,
+ * instead of a Color and an int[] per pixel.
+ * The pixels of every color are only grouped (CSR style: pixelsByColor holds the
+ * pixel indices of color c from pixelOffsets[c] to pixelOffsets[c + 1] - 1) the first
+ * time they are asked for, which adds another 4 bytes per pixel.
+ * A histogram without labels (see withoutLabels) only counts colors, a few bytes per
+ * distinct color whatever the size of the image, for images too big to keep a label per
+ * pixel (see TiledSplitter). It can be clustered but not rendered. */
+public class ColorHistogram {
+    private final int width;
+    private final int height;
+    private final int[] labels;
+    private final IntIntHashMap index;
+    private int[] colors;
+    private int[] counts;
+    private int size;
+    private int[] pixelOffsets;
+    private int[] pixelsByColor;
+
+    /* Empty histogram of the given size, pixels are added with setPixel */
+    public ColorHistogram(int width, int height) {
+        this(width, height, new int[width * height]);
+        Arrays.fill(labels, -1);
+    }
+
+    private ColorHistogram(int width, int height, int[] labels) {
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.index = new IntIntHashMap(1024, -1);
+        this.colors = new int[1024];
+        this.counts = new int[1024];
+    }
+
+    /* Empty histogram that only counts the pixels added with addPixels */
+    public static ColorHistogram withoutLabels(int width, int height) {
+        return new ColorHistogram(width, height, null);
+    }
+
+    /* Histogram rebuilt from the arrays of a previous one (see ResultCache), the arrays
+     * are used as they are, not copied. labels is null for a histogram without labels */
+    public ColorHistogram(int width, int height, int[] colors, int[] counts, int size, int[] labels) {
+        if (labels != null && labels.length != (long) width * height || colors.length < size || counts.length < size) {
+            throw new IllegalArgumentException("Histogram arrays do not match a " + width + "x" + height + " image of " + size + " colors.");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.index = new IntIntHashMap(size, -1);
+        this.colors = colors;
+        this.counts = counts;
+        this.size = size;
+
+        for (int c = 0; c < size; c++) {
+            if (index.putIfAbsent(colors[c], c) != -1) {
+                throw new IllegalArgumentException("Color " + Integer.toHexString(colors[c]) + " appears twice.");
+            }
+        }
+    }
+
+    /* Reads the image one strip of rows at a time, see ImageLoader */
+    public static ColorHistogram fromImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ColorHistogram histogram = new ColorHistogram(width, height);
+        int[] strip = new int[width * Math.min(height, ImageLoader.STRIP_ROWS)];
+
+        for (int y = 0; y < height; y += ImageLoader.STRIP_ROWS) {
+            int rows = Math.min(ImageLoader.STRIP_ROWS, height - y);
+            ImageLoader.readRows(image, y, rows, strip);
+            histogram.addPixels(y * width, strip, rows * width);
+        }
+
+        return histogram;
+    }
+
+    /* Colors count consecutive pixels starting at pixel index first (y * width + x),
+     * none of which may have a color yet */
+    public void addPixels(int first, int[] argb, int count) {
+        int last = -1;
+        int color = -1;
+
+        for (int i = 0; i < count; i++) {
+            // runs of the same color are common, they skip the hash lookup
+            if (argb[i] != last || color < 0) {
+                last = argb[i];
+                color = colorIndex(last);
+            }
+
+            if (labels != null) {
+                labels[first + i] = color;
+            }
+            counts[color]++;
+        }
+
+        pixelOffsets = null;
+    }
+
+    private int colorIndex(int argb) {
+        int color = index.putIfAbsent(argb, size);
+        if (color == -1) {
+            color = size++;
+            if (color == colors.length) {
+                colors = Arrays.copyOf(colors, Math.max(16, colors.length * 2));
+                counts = Arrays.copyOf(counts, Math.max(16, counts.length * 2));
+            }
+            colors[color] = argb;
+        }
+        return color;
+    }
+
+    /* Gives a pixel its color, the pixel must not have one yet */
+    public void setPixel(int x, int y, int argb) {
+        if (labels == null) {
+            throw new IllegalStateException("A histogram without labels only counts pixels.");
+        }
+        int pixel = y * width + x;
+        if (labels[pixel] != -1) {
+            throw new IllegalStateException("Pixel " + x + "," + y + " already has a color.");
+        }
+
+        int color = colorIndex(argb);
+
+        labels[pixel] = color;
+        counts[color]++;
+        pixelOffsets = null;
+    }
+
+    private void groupPixels() {
+        if (labels == null) {
+            throw new IllegalStateException("A histogram without labels does not know where its colors are.");
+        }
+        int[] offsets = new int[size + 1];
+        for (int c = 0; c < size; c++) {
+            offsets[c + 1] = offsets[c] + counts[c];
+        }
+
+        int[] grouped = new int[offsets[size]];
+        int[] next = Arrays.copyOf(offsets, size);
+        for (int pixel = 0; pixel < labels.length; pixel++) {
+            if (labels[pixel] >= 0) {
+                grouped[next[labels[pixel]]++] = pixel;
+            }
+        }
+
+        pixelsByColor = grouped;
+        pixelOffsets = offsets;
+    }
+
+    /* Index of the color, or -1 when the image does not have it */
+    public int indexOf(int argb) {
+        return index.get(argb);
+    }
+
+    /* Number of distinct colors */
+    public int size() {
+        return size;
+    }
+
+    public int getColor(int colorIndex) {
+        return colors[colorIndex];
+    }
+
+    public int getCount(int colorIndex) {
+        return counts[colorIndex];
+    }
+
+    /* Pixel indices (y * width + x) of every color, see getPixelOffsets */
+    public int[] getPixelsByColor() {
+        if (pixelOffsets == null) {
+            groupPixels();
+        }
+        return pixelsByColor;
+    }
+
+    /* The pixels of color c are getPixelsByColor()[offsets[c]] to getPixelsByColor()[offsets[c + 1] - 1] */
+    public int[] getPixelOffsets() {
+        if (pixelOffsets == null) {
+            groupPixels();
+        }
+        return pixelOffsets;
+    }
+
+    /* Color index of every pixel, y * width + x, -1 for pixels without a color. Null for
+     * a histogram without labels */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -1,89 +1,126 @@
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.*;
 import java.util.List;
 
+/* Colors of an image backed by a ColorHistogram. getColorKeys and getColorPixelList
+ * are views over the histogram, Colors and pixel locations are created as they are
+ * read instead of being stored per pixel. */
 public class ColorMap {
-    private HashMap<Color, List<int[]>> colorMap;
-    private Integer imageWidth;
-    private Integer imageHeight;
+    private final ColorHistogram histogram;
 
     public ColorMap(HashMap<Color, List<int[]>> colorMap) {
-        this.colorMap = new HashMap<>(colorMap);
-    }
+        int width = 0;
+        int height = 0;
+        for (List<int[]> pixels : colorMap.values()) {
+            for (int[] pixelLocation : pixels) {
+                width = Math.max(width, pixelLocation[0] + 1);
+                height = Math.max(height, pixelLocation[1] + 1);
+            }
+        }
 
-    public ColorMap(String imageFileName) throws IOException {
-        File file = new File("src/main/resources/" + imageFileName);
-        BufferedImage image = ImageIO.read(file);
-        imageWidth = image.getWidth();
-        imageHeight = image.getHeight();
-        for (int i = 0; image.getWidth() > i; i++) {
-            for (int j = 0; image.getHeight() > j; j++) {
-                Color pixel = new Color(image.getRGB(i, j));
-                if (!colorMap.containsKey(pixel)) {
-                    colorMap.put(pixel, new ArrayList<>());
-                }
-                colorMap.get(pixel).add(new int[]{i, j});
+        histogram = new ColorHistogram(width, height);
+        for (Color color : colorMap.keySet()) {
+            for (int[] pixelLocation : colorMap.get(color)) {
+                histogram.setPixel(pixelLocation[0], pixelLocation[1], color.getRGB());
             }
         }
     }
 
-    private void addColor(Color color, int[] pixelLocation) {
-        if (!colorMap.containsKey(color)) {
-            colorMap.put(color, new ArrayList<>());
-        }
+    public ColorMap(String imageFileName) throws IOException {
+        this(ImageLoader.read(new File(imageFileName)));
+    }
 
-        colorMap.get(color).add(pixelLocation);
+    public ColorMap(BufferedImage image) {
+        histogram = ColorHistogram.fromImage(image);
     }
 
-    private void removeColorPixel(Color color, int[] pixelLocation) throws Exception {
-        if (!colorMap.containsKey(color)) {
-            throw new Exception("Color nonexistent.");
-        }
+    public ColorMap(ColorHistogram histogram) {
+        this.histogram = histogram;
+    }
 
-        colorMap.get(color).remove(pixelLocation);
+    public ColorHistogram getHistogram() {
+        return histogram;
     }
 
     public java.util.Set<Color> getColorKeys() {
-        return colorMap.keySet();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Color> iterator() {
+                return new Iterator<>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < histogram.size();
+                    }
+
+                    @Override
+                    public Color next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return new Color(histogram.getColor(next++), true);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Color && histogram.indexOf(((Color) o).getRGB()) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return histogram.size();
+            }
+        };
     }
 
     public List<int[]> getColorPixelList(Color color) throws Exception {
-        if (!colorMap.containsKey(color)) {
+        int colorIndex = histogram.indexOf(color.getRGB());
+        if (colorIndex < 0) {
             throw new Exception("Color nonexistent.");
         }
 
-        return colorMap.get(color);
+        return pixelList(colorIndex);
     }
 
-    public HashMap<Color, List<int[]>> trimColorDistribution(int colorPixelLimit, int colorClusterDisparity) {
-        HashMap<Color, List<int[]>> colorAuxMap = new HashMap<>();
-        Color colorCluster = new ArrayList<>(colorMap.keySet()).get(0);
-        int rgbaLastValue = 0;
-
-        for (Color colorList : colorMap.keySet()) {
-            int rgbaCurrentValue = (colorList.getRed() + colorList.getGreen() + colorList.getBlue());
-            if (colorMap.get(colorList).size() <= colorPixelLimit && Math.abs((rgbaLastValue - rgbaCurrentValue)) <= colorClusterDisparity) {
-                if (!colorAuxMap.containsKey(colorCluster)) {
-                    colorAuxMap.put(colorCluster, new ArrayList<>());
-                }
-
-                colorAuxMap.get(colorCluster).addAll(colorMap.get(colorList));
-            } else {
-                colorCluster = colorList;
-
-                if (!colorAuxMap.containsKey(colorCluster)) {
-                    colorAuxMap.put(colorCluster, new ArrayList<>());
-                }
+    private List<int[]> pixelList(int colorIndex) {
+        int[] pixels = histogram.getPixelsByColor();
+        int from = histogram.getPixelOffsets()[colorIndex];
+        int to = histogram.getPixelOffsets()[colorIndex + 1];
+        int width = histogram.getWidth();
+
+        return new AbstractList<>() {
+            @Override
+            public int[] get(int i) {
+                Objects.checkIndex(i, to - from);
+                int pixel = pixels[from + i];
+                return new int[]{pixel % width, pixel / width};
+            }
 
-                colorAuxMap.get(colorCluster).addAll(colorMap.get(colorList));
+            @Override
+            public int size() {
+                return to - from;
             }
+        };
+    }
 
-            rgbaLastValue = rgbaCurrentValue;
+    /* Groups close colors: colors less than about colorClusterDisparity apart (on the
+     * R + G + B scale) share a PaletteReducer bucket and are listed under its mean color,
+     * colors covering more than colorPixelLimit pixels keep an entry of their own */
+    public HashMap<Color, List<int[]>> trimColorDistribution(int colorPixelLimit, int colorClusterDisparity) {
+        // buckets as wide as a third of the disparity on each channel
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(0, colorClusterDisparity / 3));
+        PaletteReducer.Reduction palette = PaletteReducer.quantize(histogram, Math.max(1, 8 - shift));
+
+        HashMap<Color, List<int[]>> colorAuxMap = new HashMap<>();
+        for (int c = 0; c < histogram.size(); c++) {
+            int colorCluster = histogram.getCount(c) > colorPixelLimit ? histogram.getColor(c) : palette.getColor(palette.bucketOf(c));
+            colorAuxMap.computeIfAbsent(new Color(colorCluster, true), k -> new ArrayList<>()).addAll(pixelList(c));
         }
 
         System.out.println("\nTotal of different colors after trimming (returned color map): " + colorAuxMap.keySet().size() + "\n");
@@ -91,80 +128,49 @@ public class ColorMap {
         return colorAuxMap;
     }
 
-    public void toImages(DataSet data) throws IOException {
-        // output into color clusters
-        HashMap<Integer, List<Color>> imageColorMapping = data.createOutputColorMap(colorMap);
-
-        System.out.println("\nTotal of different image parts that will be created: " + (imageColorMapping.keySet().size() + 1) + ".\n");
-
-        for (int colorSection : imageColorMapping.keySet()) {
-            // Constructs a BufferedImage of one of the predefined image types.
-            BufferedImage imageColorPart = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
-
-            // Create a graphics which can be used to draw into the buffered image
-            Graphics2D g2d = imageColorPart.createGraphics();
-
-            g2d.setComposite(AlphaComposite.Clear);
-            g2d.fillRect(0, 0, imageWidth, imageHeight);
-
-            for (Color colorList : imageColorMapping.get(colorSection)) {
-                for (int[] pixelLocation : colorMap.get(colorList)) {
-                    g2d.setColor(colorList);
-                    g2d.setComposite(AlphaComposite.SrcIn);
-                    g2d.fillRect(pixelLocation[0], pixelLocation[1], 1, 1);
-                }
-            }
+    /* The image with its colors reduced to at most targetColors, see PaletteReducer */
+    public ColorMap reducePalette(int targetColors) {
+        return new ColorMap(new PaletteReducer(targetColors).reduce(histogram).toHistogram(histogram));
+    }
 
-            // Disposes of this graphics context and releases any system resources that it is using.
-            g2d.dispose();
+    /* Writes one image per cluster plus the fused image into src/splitImages */
+    public void toImages(DataSet data) throws IOException {
+        toImages(data, new LayerWriter(new File("src/splitImages")));
+    }
 
-            // Save as PNG
-            File imagePart = new File("src/splitImages/colorImage" + colorSection + ".png");
-            ImageIO.write(imageColorPart, "png", imagePart);
+    /* The data set must have been built from this color map's histogram, record i being color i */
+    public void toImages(DataSet data, LayerWriter writer) throws IOException {
+        if (data.size() != histogram.size()) {
+            throw new IllegalArgumentException("The data set was not built from this color map.");
         }
 
-        // Constructs a BufferedImage of one of the predefined image types.
-        BufferedImage imageColorPart = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
-
-        // Create a graphics which can be used to draw into the buffered image
-        Graphics2D g2d = imageColorPart.createGraphics();
-
-        g2d.setComposite(AlphaComposite.Clear);
-        g2d.fillRect(0, 0, imageWidth, imageHeight);
-
-        for (int colorSection : imageColorMapping.keySet()) {
-            for (Color colorList : imageColorMapping.get(colorSection)) {
-                for (int[] pixelLocation : colorMap.get(colorList)) {
-                    g2d.setComposite(AlphaComposite.Src);
-                    g2d.setColor(colorList);
-                    g2d.fillRect(pixelLocation[0], pixelLocation[1], 1, 1);
-                }
-            }
+        int[] clusterOfColor = new int[histogram.size()];
+        for (int c = 0; c < histogram.size(); c++) {
+            clusterOfColor[c] = data.getClusterNo(c);
         }
+        LayerRenderer renderer = new LayerRenderer(histogram, clusterOfColor);
 
-        // Disposes of this graphics context and releases any system resources that it is using.
-        g2d.dispose();
+        System.out.println("\nTotal of different image parts that will be created: " + (renderer.getClusters().length + 1) + ".\n");
 
-        // Save as PNG
-        File imagePart = new File("src/splitImages/colorImageFused.png");
-        ImageIO.write(imageColorPart, "png", imagePart);
+        writer.write(renderer);
     }
 
     @Override
     public String toString() {
         StringBuilder str = new StringBuilder();
 
-        for (Color color : colorMap.keySet()) {
+        for (int c = 0; c < histogram.size(); c++) {
+            Color color = new Color(histogram.getColor(c), true);
             str.append("-----------------------------");
             str.append("\n").append("Red:\t").append(color.getRed()).append("\n");
             str.append("\n").append("Green:\t").append(color.getGreen()).append("\n");
             str.append("\n").append("Blue:\t").append(color.getBlue()).append("\n");
             str.append("\n").append("Alpha:\t").append(color.getAlpha()).append("\n");
-            str.append("This color has ").append(colorMap.get(color).size()).append(" pixel cells of this color.");
+            str.append("This color has ").append(histogram.getCount(c)).append(" pixel cells of this color.");
         }
 
         str.append("\n").append("||||||||||||||||||||||||||");
-        str.append("\n").append("Total of different colors:\t").append(colorMap.keySet().size()).append(".").append("\n");
+        str.append("\n").append("Total of different colors:\t").append(histogram.size()).append(".").append("\n");
 
         return str.toString();
     }
@@ -0,0 +1,57 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/* Samples pixels of a color histogram, each color is drawn with probability
+ * proportional to the number of pixels it covers. Only the distinct colors and
+ * their cumulative pixel counts are kept, never anything per pixel. */
+public class ColorMapSampler implements PointSampler {
+    private final int[] colors;
+    private final long[] cumulativeCounts;
+    private ColorSpace space = ColorSpace.RGB;
+
+    public ColorMapSampler(ColorHistogram histogram) {
+        colors = new int[histogram.size()];
+        cumulativeCounts = new long[histogram.size()];
+
+        long total = 0;
+        for (int c = 0; c < colors.length; c++) {
+            total += histogram.getCount(c);
+            colors[c] = histogram.getColor(c);
+            cumulativeCounts[c] = total;
+        }
+
+        if (total == 0) {
+            throw new IllegalArgumentException("The color map has no pixels.");
+        }
+    }
+
+    public ColorMapSampler(ColorMap colorMap) {
+        this(colorMap.getHistogram());
+    }
+
+    public ColorMapSampler setColorSpace(ColorSpace space) {
+        this.space = space;
+        return this;
+    }
+
+    @Override
+    public String[] getAttrNames() {
+        return space.getAttrNames();
+    }
+
+    @Override
+    public void sample(double[] batch, int count, Random random) {
+        long total = cumulativeCounts[cumulativeCounts.length - 1];
+
+        for (int i = 0; i < count; i++) {
+            long pixel = (long) (random.nextDouble() * total);
+            int index = Arrays.binarySearch(cumulativeCounts, pixel + 1);
+            if (index < 0) {
+                index = -index - 1;
+            }
+
+            int argb = colors[index];
+            space.toPoint(argb, batch, i * 4);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/* Space colors are clustered in. RGB is the raw 0-255 channels, OKLAB and CIELAB are
+ * perceptual spaces where equal distances look like equal color differences, so
+ * clusters follow what the eye separates and fewer of them are needed.
+ * Perceptual lightness runs from 0 to 100 (OKLab's L, a and b are scaled by 100 to
+ * match CIELAB's range) and alpha is scaled from 0-255 to 0-100 alongside it, so a
+ * fully transparent pixel is as far from an opaque one as black is from white.
+ * The sRGB transfer curve is a 256 entry table, a conversion is then a few multiply
+ * adds and three cube roots per color with no branch but CIELAB's dark range. */
+public enum ColorSpace {
+    RGB("Red", "Green", "Blue", "Alpha"),
+    OKLAB("L", "a", "b", "Alpha"),
+    CIELAB("L", "a", "b", "Alpha");
+
+    // linear light of every 8 bit sRGB value
+    private static final double[] SRGB_TO_LINEAR = new double[256];
+    // CIELAB D65 white point
+    private static final double WHITE_X = 0.95047;
+    private static final double WHITE_Z = 1.08883;
+    private static final double EPSILON = 216.0 / 24389.0;
+    private static final double KAPPA = 24389.0 / 27.0;
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            double c = v / 255.0;
+            SRGB_TO_LINEAR[v] = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private final String[] attrNames;
+
+    ColorSpace(String... attrNames) {
+        this.attrNames = attrNames;
+    }
+
+    public String[] getAttrNames() {
+        return attrNames.clone();
+    }
+
+    /* Writes the 4 attributes of a packed ARGB color at values[offset] */
+    public void toPoint(int argb, double[] values, int offset) {
+        int alpha = argb >>> 24;
+        int red = (argb >> 16) & 0xFF;
+        int green = (argb >> 8) & 0xFF;
+        int blue = argb & 0xFF;
+
+        if (this == RGB) {
+            values[offset] = red;
+            values[offset + 1] = green;
+            values[offset + 2] = blue;
+            values[offset + 3] = alpha;
+            return;
+        }
+
+        double r = SRGB_TO_LINEAR[red];
+        double g = SRGB_TO_LINEAR[green];
+        double b = SRGB_TO_LINEAR[blue];
+
+        if (this == OKLAB) {
+            // Ottosson's matrices, linear sRGB to LMS and cone responses to Lab
+            double l = Math.cbrt(0.4122214708 * r + 0.5363325363 * g + 0.0514459929 * b);
+            double m = Math.cbrt(0.2119034982 * r + 0.6806995451 * g + 0.1073969566 * b);
+            double s = Math.cbrt(0.0883024619 * r + 0.2817188376 * g + 0.6299787005 * b);
+            values[offset] = 100.0 * (0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s);
+            values[offset + 1] = 100.0 * (1.9779984951 * l - 2.4285922050 * m + 0.4505937099 * s);
+            values[offset + 2] = 100.0 * (0.0259040371 * l + 0.7827717662 * m - 0.8086757660 * s);
+        } else {
+            double x = labCurve((0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / WHITE_X);
+            double y = labCurve(0.2126729 * r + 0.7151522 * g + 0.0721750 * b);
+            double z = labCurve((0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / WHITE_Z);
+            values[offset] = 116.0 * y - 16.0;
+            values[offset + 1] = 500.0 * (x - y);
+            values[offset + 2] = 200.0 * (y - z);
+        }
+        values[offset + 3] = alpha * (100.0 / 255.0);
+    }
+
+    private static double labCurve(double t) {
+        return t > EPSILON ? Math.cbrt(t) : (KAPPA * t + 16.0) / 116.0;
+    }
+
+    /* Converts count colors into the interleaved layout at the start of values */
+    public void toPoints(int[] argb, int count, double[] values) {
+        for (int i = 0; i < count; i++) {
+            toPoint(argb[i], values, i * 4);
+        }
+    }
+
+    /* Case insensitive, for command lines */
+    public static ColorSpace parse(String name) {
+        for (ColorSpace space : values()) {
+            if (space.name().equalsIgnoreCase(name)) {
+                return space;
+            }
+        }
+        throw new IllegalArgumentException("Unknown color space " + name + ", expected rgb, oklab or cielab.");
+    }
+}
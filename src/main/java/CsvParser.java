@@ -0,0 +1,250 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/* Reads the numeric CSV files of DataSet without a String per line or per field: the
+ * input is read in 64 KB blocks of bytes, lines and fields are found by scanning for
+ * line breaks and commas, and numbers are converted straight from the bytes. Numbers
+ * of at most 18 significant digits with a decimal exponent of at most 22 either way,
+ * which covers what String.valueOf(double) writes for colors and counts and most hand
+ * written data, are exactly a long multiplied or divided by a power of ten, both of
+ * them exact doubles, so one correctly rounded operation gives the same double as
+ * Double.parseDouble. Anything else (NaN, Infinity, hexadecimal, blanks around the
+ * number, long mantissas...) is handed to Double.parseDouble, so values and errors
+ * stay those of BufferedReader.readLine, String.split(",") and Double.parseDouble.
+ * Bytes are taken as ASCII, text given to Double.parseDouble and header names are
+ * decoded with the platform charset like FileReader does. */
+public class CsvParser implements Closeable {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // 10^18 still fits a long with room for one more digit
+    private static final int MAX_DIGITS = 18;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[1 << 16];
+    // next unread byte and end of the bytes read
+    private int position;
+    private int limit;
+    // the current line, without its line break
+    private int lineStart;
+    private int lineEnd;
+    // a \r ended the last line, a \n right after it belongs to the same break
+    private boolean skipLineFeed;
+    private int lineNumber;
+
+    public CsvParser(InputStream in) {
+        this.in = in;
+    }
+
+    /* Moves to the next line, returns false at the end of the input. Lines end with \n,
+     * \r or \r\n like with BufferedReader.readLine */
+    public boolean nextLine() throws IOException {
+        if (skipLineFeed) {
+            skipLineFeed = false;
+            if (position < limit || fill()) {
+                if (buffer[position] == '\n') {
+                    position++;
+                }
+            }
+        }
+
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                byte b = buffer[scan];
+                if (b == '\n' || b == '\r') {
+                    lineStart = position;
+                    lineEnd = scan;
+                    position = scan + 1;
+                    skipLineFeed = b == '\r';
+                    lineNumber++;
+                    return true;
+                }
+            }
+
+            // no line break in the buffer yet
+            int shift = position;
+            boolean more = fill();
+            scan -= shift;
+            if (!more) {
+                if (position == limit) {
+                    return false;
+                }
+                lineStart = position;
+                lineEnd = limit;
+                position = limit;
+                lineNumber++;
+                return true;
+            }
+        }
+    }
+
+    /* Moves the unread bytes to the front of the buffer, which grows for lines longer
+     * than it, and reads more of the input. Returns false at the end of the input */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /* 1 for the first line */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /* Number of fields of the current line as String.split(",") counts them: trailing
+     * empty fields are dropped, but an empty line is one empty field */
+    public int fieldCount() {
+        if (lineEnd == lineStart) {
+            return 1;
+        }
+
+        int end = trimmedEnd();
+        if (end == lineStart) {
+            return 0;
+        }
+
+        int fields = 1;
+        for (int i = lineStart; i < end; i++) {
+            if (buffer[i] == ',') {
+                fields++;
+            }
+        }
+        return fields;
+    }
+
+    /* The fields of the current line as text, for the header */
+    public String[] fields() {
+        String[] fields = new String[fieldCount()];
+        int from = lineStart;
+        for (int f = 0; f < fields.length; f++) {
+            int to = fieldEnd(from);
+            fields[f] = text(from, to);
+            from = to + 1;
+        }
+        return fields;
+    }
+
+    /* Parses the first count fields of the current line into values from offset */
+    public void parseFields(double[] values, int offset, int count) {
+        int from = lineStart;
+        for (int f = 0; f < count; f++) {
+            int to = fieldEnd(from);
+            values[offset + f] = parseDouble(from, to);
+            from = to + 1;
+        }
+    }
+
+    // end of the line once trailing commas are dropped
+    private int trimmedEnd() {
+        int end = lineEnd;
+        while (end > lineStart && buffer[end - 1] == ',') {
+            end--;
+        }
+        return end;
+    }
+
+    private int fieldEnd(int from) {
+        int to = from;
+        while (to < lineEnd && buffer[to] != ',') {
+            to++;
+        }
+        return to;
+    }
+
+    private String text(int from, int to) {
+        return new String(buffer, from, to - from, Charset.defaultCharset());
+    }
+
+    private double parseDouble(int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+
+        for (; i < to && isDigit(buffer[i]); i++) {
+            if (mantissa > 0 || buffer[i] != '0') {
+                if (++digits > MAX_DIGITS) {
+                    return Double.parseDouble(text(from, to));
+                }
+                mantissa = mantissa * 10 + (buffer[i] - '0');
+            }
+            anyDigit = true;
+        }
+        if (i < to && buffer[i] == '.') {
+            for (i++; i < to && isDigit(buffer[i]); i++) {
+                if (mantissa > 0 || buffer[i] != '0') {
+                    if (++digits > MAX_DIGITS) {
+                        return Double.parseDouble(text(from, to));
+                    }
+                    mantissa = mantissa * 10 + (buffer[i] - '0');
+                }
+                exponent--;
+                anyDigit = true;
+            }
+        }
+        if (anyDigit && i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+                negativeExponent = buffer[i] == '-';
+                i++;
+            }
+            int value = 0;
+            int start = i;
+            // a few digits are plenty, longer exponents are the slow path's
+            for (; i < to && isDigit(buffer[i]) && i - start < 4; i++) {
+                value = value * 10 + (buffer[i] - '0');
+            }
+            if (i == start) {
+                return Double.parseDouble(text(from, to));
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!anyDigit || i != to) {
+            return Double.parseDouble(text(from, to));
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (mantissa > 1L << 53 || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(text(from, to));
+        }
+
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
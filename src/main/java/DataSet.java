@@ -1,95 +1,127 @@
 import java.awt.*;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.*;
 
 // The original class is from here - https://github.com/Mentathiel/KMeansJava
+/* Records are kept in random access, primitive storage: the attribute values of
+ * record i are values[i * attrNames.length] up to values[i * attrNames.length + attrNames.length - 1],
+ * its cluster is clusterNumbers[i] (-1 while unassigned) and the records already
+ * picked as centroids are flagged in a BitSet. The squared distance of every record
+ * to its nearest picked centroid is cached and lowered as new centroids are picked.
+ * Records built from a color map weigh the number of pixels of their color, so
+ * centroids and SSE count every pixel, CSV records weigh 1 (null weights).
+ * Large data sets are best kept in the binary format of DataSetFile (readBinary and
+ * writeBinary), which keeps weights and clusters and needs no parsing. */
 public class DataSet {
     private static final Random random = new Random();
-    private final LinkedList<String> attrNames = new LinkedList<>();
-    private final LinkedList<Record> records = new LinkedList<>();
-    private final LinkedList<Integer> indicesOfCentroids = new LinkedList<>();
-    private final HashMap<String, Double> minimums = new HashMap<>();
-    private final HashMap<String, Double> maximums = new HashMap<>();
-
+    private String[] attrNames;
+    private final HashMap<String, Integer> attrIndices = new HashMap<>();
+    private double[] values;
+    private int size;
+    private double[] weights;
+    private int[] clusterNumbers;
+    private final BitSet indicesOfCentroids = new BitSet();
+    private double[] nearestCentroidDistances;
+    private double nearestCentroidTotal;
+    private double[] minimums;
+    private double[] maximums;
+
+    /* Reads a CSV file, a header of attribute names then one record per line, with a
+     * CsvParser */
     public DataSet(String csvFileName) throws IOException {
 
-        String row;
-        try (BufferedReader csvReader = new BufferedReader(new FileReader(csvFileName))) {
-            if ((row = csvReader.readLine()) != null) {
-                String[] data = row.split(",");
-                Collections.addAll(attrNames, data);
-            }
-
-            while ((row = csvReader.readLine()) != null) {
-                String[] data = row.split(",");
-
-                HashMap<String, Double> record = new HashMap<>();
+        try (CsvParser csv = new CsvParser(new FileInputStream(csvFileName))) {
+            setAttrNames(csv.nextLine() ? csv.fields() : new String[0]);
 
-                if (attrNames.size() == data.length) {
-                    for (int i = 0; i < attrNames.size(); i++) {
-                        String name = attrNames.get(i);
-                        double val = Double.parseDouble(data[i]);
-                        record.put(name, val);
-                        updateMin(name, val);
-                        updateMax(name, val);
-                    }
-                } else {
+            while (csv.nextLine()) {
+                if (csv.fieldCount() != attrNames.length) {
                     throw new IOException("Incorrectly formatted file.");
                 }
 
-                records.add(new Record(record));
+                // parsed in place, then recorded for the attribute ranges
+                int offset = addRecord();
+                csv.parseFields(values, offset, attrNames.length);
+                for (int i = 0; i < attrNames.length; i++) {
+                    setValue(offset, i, values[offset + i]);
+                }
             }
 
         }
+
+        trimToSize();
     }
 
     public DataSet(HashMap<Color, List<int[]>> colorMap) {
         // Data Attributes
-        attrNames.add("Red");
-        attrNames.add("Green");
-        attrNames.add("Blue");
-        attrNames.add("Alpha");
-        //attrNames.add("X");
-        //attrNames.add("Y");
+        setAttrNames(new String[]{"Red", "Green", "Blue", "Alpha"});
+        // records are colors, clustering on position as well is done per pixel by Superpixels
+
+        values = new double[colorMap.size() * attrNames.length];
+        weights = new double[colorMap.size()];
 
         // Adding data to processing line
         for (Color color : colorMap.keySet()) {
-            HashMap<String, Double> record = new HashMap<>();
-            Double red = (double) color.getRed();
-            Double green = (double) color.getGreen();
-            Double blue = (double) color.getBlue();
-            Double alpha = (double) color.getAlpha();
-
-            record.put("Red", red);
-            updateMin("Red", red);
-            updateMax("Red", red);
-            record.put("Green", green);
-            updateMin("Green", green);
-            updateMax("Green", green);
-            record.put("Blue", blue);
-            updateMin("Blue", blue);
-            updateMax("Blue", blue);
-            record.put("Alpha", alpha);
-            updateMin("Alpha", alpha);
-            updateMax("Alpha", alpha);
-
-            /*for (int[] pixelLocation : colorMap.get(color)) {
-                Double x = (double) pixelLocation[0];
-                Double y = (double) pixelLocation[1];
-                record.put("X", x);
-                updateMin("X", x);
-                updateMax("X", x);
-                record.put("Y", y);
-                updateMin("Y", y);
-                updateMax("Y", y);
-                records.add(new Record(record));
-            }*/
-
-            records.add(new Record(record));
-        }
-
-        System.out.println("Recorded " + records.size() + " records.");
+            weights[size] = colorMap.get(color).size();
+            int offset = addRecord();
+            setValue(offset, 0, color.getRed());
+            setValue(offset, 1, color.getGreen());
+            setValue(offset, 2, color.getBlue());
+            setValue(offset, 3, color.getAlpha());
+        }
+
+        trimToSize();
+
+        System.out.println("Recorded " + size + " records.");
+    }
+
+    /* One record per distinct color, record i being color i of the histogram and
+     * weighing its pixel count */
+    public DataSet(ColorHistogram histogram) {
+        this(histogram, ColorSpace.RGB);
+    }
+
+    /* Same as above with the colors in the given space, see ColorSpace */
+    public DataSet(ColorHistogram histogram, ColorSpace space) {
+        setAttrNames(space.getAttrNames());
+
+        int[] colors = new int[histogram.size()];
+        weights = new double[histogram.size()];
+        for (int c = 0; c < colors.length; c++) {
+            colors[c] = histogram.getColor(c);
+            weights[c] = histogram.getCount(c);
+        }
+
+        // converted in one pass, then recorded for the attribute ranges
+        values = new double[colors.length * attrNames.length];
+        space.toPoints(colors, colors.length, values);
+        for (int c = 0; c < colors.length; c++) {
+            int offset = addRecord();
+            for (int d = 0; d < attrNames.length; d++) {
+                setValue(offset, d, values[offset + d]);
+            }
+        }
+
+        trimToSize();
+    }
+
+    private DataSet(DataSetFile file) {
+        values = file.getValues();
+        setAttrNames(file.getAttrNames());
+        weights = file.getWeights();
+        size = file.size();
+        for (int offset = 0; offset < values.length; offset += attrNames.length) {
+            for (int d = 0; d < attrNames.length; d++) {
+                setValue(offset, d, values[offset + d]);
+            }
+        }
+        clusterNumbers = file.getClusterNumbers();
+    }
+
+    /* Reads a data set written by writeBinary, with its weights and clusters */
+    public static DataSet readBinary(String fileName) throws IOException {
+        return new DataSet(DataSetFile.read(Paths.get(fileName)));
     }
 
     public static Double euclideanDistance(HashMap<String, Double> a, HashMap<String, Double> b) {
@@ -106,201 +138,381 @@ public class DataSet {
         return Math.sqrt(sum);
     }
 
+    private void setAttrNames(String[] names) {
+        attrNames = names;
+        attrIndices.clear();
+        for (int i = 0; i < names.length; i++) {
+            attrIndices.put(names[i], i);
+        }
+
+        minimums = new double[names.length];
+        maximums = new double[names.length];
+        Arrays.fill(minimums, Double.POSITIVE_INFINITY);
+        Arrays.fill(maximums, Double.NEGATIVE_INFINITY);
+
+        if (values == null) {
+            values = new double[16 * Math.max(1, names.length)];
+        }
+    }
+
+    /* Appends an empty record and returns the offset of its first attribute */
+    private int addRecord() {
+        int offset = size * attrNames.length;
+        if (offset + attrNames.length > values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, offset + attrNames.length));
+        }
+        size++;
+        return offset;
+    }
+
+    private void setValue(int offset, int attr, double val) {
+        values[offset + attr] = val;
+        if (val < minimums[attr]) {
+            minimums[attr] = val;
+        }
+        if (val > maximums[attr]) {
+            maximums[attr] = val;
+        }
+    }
+
+    private void trimToSize() {
+        if (values.length != size * attrNames.length) {
+            values = Arrays.copyOf(values, size * attrNames.length);
+        }
+        clusterNumbers = new int[size];
+        Arrays.fill(clusterNumbers, -1);
+    }
+
+    private double squaredDistance(int a, int b) {
+        return PointSet.squaredDistance(values, a, values, b, attrNames.length);
+    }
+
+    private double weight(int index) {
+        return weights == null ? 1.0 : weights[index];
+    }
+
+    private HashMap<String, Double> recordAsMap(int index) {
+        HashMap<String, Double> result = new HashMap<>();
+        int offset = index * attrNames.length;
+        for (int d = 0; d < attrNames.length; d++) {
+            result.put(attrNames[d], values[offset + d]);
+        }
+        return result;
+    }
+
+    /* Adapter for the clustering engine, the PointSet shares the value storage and
+     * follows the order of getAttrNames() */
+    public PointSet toPointSet() {
+        return new PointSet(attrNames, values, weights);
+    }
+
+    public void setClusterAssignments(int[] assignments) {
+        if (assignments.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " cluster assignments.");
+        }
+
+        System.arraycopy(assignments, 0, clusterNumbers, 0, size);
+    }
+
     public void createCsvOutput(String outputFileName) {
 
-        try (BufferedWriter csvWriter = new BufferedWriter(new FileWriter(outputFileName))) {
-            for (int i = 0; i < attrNames.size(); i++) {
-                csvWriter.write(attrNames.get(i));
+        try (BufferedWriter csvWriter = new BufferedWriter(new FileWriter(outputFileName), 1 << 16)) {
+            for (String attrName : attrNames) {
+                csvWriter.write(attrName);
                 csvWriter.write(",");
             }
 
             csvWriter.write("ClusterId");
             csvWriter.write("\n");
 
-            for (var record : records) {
-                for (int i = 0; i < attrNames.size(); i++) {
-                    csvWriter.write(String.valueOf(record.getRecord().get(attrNames.get(i))));
-                    csvWriter.write(",");
+            // one builder and one buffer for every line, appending a double makes no String
+            StringBuilder line = new StringBuilder();
+            char[] chars = new char[64];
+            for (int i = 0; i < size; i++) {
+                line.setLength(0);
+                for (int d = 0; d < attrNames.length; d++) {
+                    line.append(values[i * attrNames.length + d]).append(',');
+                }
+                if (clusterNumbers[i] < 0) {
+                    line.append("null");
+                } else {
+                    line.append(clusterNumbers[i]);
                 }
-                csvWriter.write(String.valueOf(record.clusterNo));
-                csvWriter.write("\n");
+                line.append('\n');
+                if (chars.length < line.length()) {
+                    chars = new char[line.length() * 2];
+                }
+                line.getChars(0, line.length(), chars, 0);
+                csvWriter.write(chars, 0, line.length());
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /* Writes the records, their weights and clusters in the columnar binary format of
+     * DataSetFile, read back by readBinary */
+    public void writeBinary(String fileName) throws IOException {
+        DataSetFile.write(Paths.get(fileName), attrNames, values, size, weights, clusterNumbers);
+    }
+
     public HashMap<Integer, List<Color>> createOutputColorMap(HashMap<Color, List<int[]>> colorMap) {
         int i = 0;
         HashMap<Integer, List<Color>> colorImageMapping = new HashMap<>();
 
         for (Color color : colorMap.keySet()) {
-            if (!colorImageMapping.containsKey(records.get(i).clusterNo)) {
-                colorImageMapping.put(records.get(i).clusterNo, new ArrayList<>());
-            }
-            colorImageMapping.get(records.get(i++).clusterNo).add(color);
+            colorImageMapping.computeIfAbsent(clusterNumbers[i++], k -> new ArrayList<>()).add(color);
         }
 
         return colorImageMapping;
     }
 
-    private void updateMin(String name, Double val) {
-        if (minimums.containsKey(name)) {
-            if (val < minimums.get(name)) {
-                minimums.put(name, val);
-            }
-        } else {
-            minimums.put(name, val);
-        }
-    }
-
-    private void updateMax(String name, Double val) {
-        if (maximums.containsKey(name)) {
-            if (val > maximums.get(name)) {
-                maximums.put(name, val);
-            }
-        } else {
-            maximums.put(name, val);
-        }
-    }
-
-    public Double meanOfAttr(String attrName, LinkedList<Integer> indices) {
-        Double sum = 0.0;
+    /* Weighted mean of an attribute over the given records */
+    public Double meanOfAttr(String attrName, List<Integer> indices) {
+        int attr = attrIndices.get(attrName);
+        double sum = 0.0;
+        double weight = 0.0;
         for (int i : indices) {
-            if (i < records.size()) {
-                sum += records.get(i).getRecord().get(attrName);
+            if (i < size) {
+                sum += weight(i) * values[i * attrNames.length + attr];
+                weight += weight(i);
             }
         }
-        return sum / indices.size();
+        return sum / weight;
     }
 
     public HashMap<String, Double> calculateCentroid(int clusterNo) {
-        HashMap<String, Double> centroid = new HashMap<>();
-
-        LinkedList<Integer> recsInCluster = new LinkedList<>();
-        for (int i = 0; i < records.size(); i++) {
-            var record = records.get(i);
-            if (record.clusterNo == clusterNo) {
-                recsInCluster.add(i);
+        int dimensions = attrNames.length;
+        double[] sums = new double[dimensions];
+        double weight = 0.0;
+
+        for (int i = 0; i < size; i++) {
+            if (clusterNumbers[i] == clusterNo) {
+                for (int d = 0; d < dimensions; d++) {
+                    sums[d] += weight(i) * values[i * dimensions + d];
+                }
+                weight += weight(i);
             }
         }
 
-        for (String name : attrNames) {
-            centroid.put(name, meanOfAttr(name, recsInCluster));
+        HashMap<String, Double> centroid = new HashMap<>();
+        for (int d = 0; d < dimensions; d++) {
+            centroid.put(attrNames[d], sums[d] / weight);
         }
         return centroid;
     }
 
+    /* Single pass over the records accumulating per cluster sums, instead of one
+     * calculateCentroid scan per cluster */
     public LinkedList<HashMap<String, Double>> recomputeCentroids(int K) {
+        int dimensions = attrNames.length;
+        double[] sums = new double[K * dimensions];
+        double[] clusterWeights = new double[K];
+
+        for (int i = 0; i < size; i++) {
+            int clusterNo = clusterNumbers[i];
+            if (clusterNo < 0 || clusterNo >= K) {
+                continue;
+            }
+
+            for (int d = 0; d < dimensions; d++) {
+                sums[clusterNo * dimensions + d] += weight(i) * values[i * dimensions + d];
+            }
+            clusterWeights[clusterNo] += weight(i);
+        }
+
         LinkedList<HashMap<String, Double>> centroids = new LinkedList<>();
-        for (int i = 0; i < K; i++) {
-            centroids.add(calculateCentroid(i));
+        for (int c = 0; c < K; c++) {
+            HashMap<String, Double> centroid = new HashMap<>();
+            for (int d = 0; d < dimensions; d++) {
+                centroid.put(attrNames[d], sums[c * dimensions + d] / clusterWeights[c]);
+            }
+            centroids.add(centroid);
         }
         return centroids;
     }
 
     public void removeAttr(String attrName) {
-        if (attrNames.contains(attrName)) {
-            attrNames.remove(attrName);
-
-            for (var record : records) {
-                record.getRecord().remove(attrName);
-            }
+        Integer attr = attrIndices.get(attrName);
+        if (attr == null) {
+            return;
+        }
 
-            minimums.remove(attrName);
+        int oldDimensions = attrNames.length;
+        int newDimensions = oldDimensions - 1;
+        double[] newValues = new double[size * newDimensions];
 
-            maximums.remove(attrName);
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(values, i * oldDimensions, newValues, i * newDimensions, attr);
+            System.arraycopy(values, i * oldDimensions + attr + 1, newValues, i * newDimensions + attr, newDimensions - attr);
         }
 
+        double[] oldMinimums = minimums;
+        double[] oldMaximums = maximums;
+
+        String[] names = new String[newDimensions];
+        System.arraycopy(attrNames, 0, names, 0, attr);
+        System.arraycopy(attrNames, attr + 1, names, attr, newDimensions - attr);
+        values = newValues;
+        setAttrNames(names);
+
+        System.arraycopy(oldMinimums, 0, minimums, 0, attr);
+        System.arraycopy(oldMinimums, attr + 1, minimums, attr, newDimensions - attr);
+        System.arraycopy(oldMaximums, 0, maximums, 0, attr);
+        System.arraycopy(oldMaximums, attr + 1, maximums, attr, newDimensions - attr);
+
+        // distances to the picked centroids changed with the schema
+        nearestCentroidDistances = null;
+        for (int i = indicesOfCentroids.nextSetBit(0); i >= 0; i = indicesOfCentroids.nextSetBit(i + 1)) {
+            addCentroid(i);
+        }
     }
 
     public HashMap<String, Double> randomDataPoint() {
         HashMap<String, Double> res = new HashMap<>();
 
-        for (String name : attrNames) {
-            Double min = minimums.get(name);
-            Double max = maximums.get(name);
-            res.put(name, min + (max - min) * random.nextDouble());
+        for (int d = 0; d < attrNames.length; d++) {
+            double min = minimums[d];
+            double max = maximums[d];
+            res.put(attrNames[d], min + (max - min) * random.nextDouble());
         }
 
         return res;
     }
 
     public HashMap<String, Double> randomFromDataSet() {
-        int index = random.nextInt(records.size());
-        return records.get(index).getRecord();
+        int index = random.nextInt(size);
+        addCentroid(index);
+        return recordAsMap(index);
     }
 
     public Double calculateClusterSSE(HashMap<String, Double> centroid, int clusterNo) {
+        double[] point = centroidAsArray(centroid);
         double SSE = 0.0;
-        for (int i = 0; i < records.size(); i++) {
-            if (records.get(i).clusterNo == clusterNo) {
-                SSE += Math.pow(euclideanDistance(centroid, records.get(i).getRecord()), 2);
+        for (int i = 0; i < size; i++) {
+            if (clusterNumbers[i] == clusterNo) {
+                SSE += weight(i) * PointSet.squaredDistance(point, 0, values, i, attrNames.length);
             }
         }
         return SSE;
     }
 
+    /* Single pass over the records, each one is measured against its own centroid */
     public Double calculateTotalSSE(LinkedList<HashMap<String, Double>> centroids) {
-        Double SSE = 0.0;
-        for (int i = 0; i < centroids.size(); i++) {
-            SSE += calculateClusterSSE(centroids.get(i), i);
+        double[] points = new double[centroids.size() * attrNames.length];
+        int c = 0;
+        for (HashMap<String, Double> centroid : centroids) {
+            System.arraycopy(centroidAsArray(centroid), 0, points, c++ * attrNames.length, attrNames.length);
+        }
+
+        double SSE = 0.0;
+        for (int i = 0; i < size; i++) {
+            if (clusterNumbers[i] >= 0 && clusterNumbers[i] < centroids.size()) {
+                SSE += weight(i) * PointSet.squaredDistance(points, clusterNumbers[i], values, i, attrNames.length);
+            }
         }
         return SSE;
     }
 
+    /* Attributes missing from the centroid become NaN, like the infinite distance
+     * euclideanDistance gives to maps with different keys */
+    private double[] centroidAsArray(HashMap<String, Double> centroid) {
+        double[] point = new double[attrNames.length];
+        for (int d = 0; d < attrNames.length; d++) {
+            Double value = centroid.get(attrNames[d]);
+            point[d] = value == null || centroid.size() != attrNames.length ? Double.NaN : value;
+        }
+        return point;
+    }
+
+    /* k-means++ step, picks a record with probability proportional to its weight times
+     * its squared distance to the nearest centroid already picked. Returns an empty map when every
+     * record coincides with a picked centroid */
     public HashMap<String, Double> calculateWeighedCentroid() {
-        double sum = 0.0;
+        if (nearestCentroidDistances == null) {
+            return randomFromDataSet();
+        }
 
-        for (int i = 0; i < records.size(); i++) {
-            if (!indicesOfCentroids.contains(i)) {
-                double minDist = Double.MAX_VALUE;
-                for (int ind : indicesOfCentroids) {
-                    double dist = euclideanDistance(records.get(i).getRecord(), records.get(ind).getRecord());
-                    if (dist < minDist)
-                        minDist = dist;
-                }
-                if (indicesOfCentroids.isEmpty())
-                    sum = 0.0;
-                sum += minDist;
-            }
+        if (!(nearestCentroidTotal > 0.0)) {
+            return new HashMap<>();
         }
 
-        double threshold = sum * random.nextDouble();
+        double threshold = nearestCentroidTotal * random.nextDouble();
+        double sum = 0.0;
+        int last = -1;
 
-        for (int i = 0; i < records.size(); i++) {
-            if (!indicesOfCentroids.contains(i)) {
-                double minDist = Double.MAX_VALUE;
-                for (int ind : indicesOfCentroids) {
-                    double dist = euclideanDistance(records.get(i).getRecord(), records.get(ind).getRecord());
-                    if (dist < minDist)
-                        minDist = dist;
-                }
-                sum += minDist;
+        for (int i = 0; i < size; i++) {
+            double mass = weight(i) * nearestCentroidDistances[i];
+            if (mass > 0.0) {
+                sum += mass;
+                last = i;
 
                 if (sum > threshold) {
-                    indicesOfCentroids.add(i);
-                    return records.get(i).getRecord();
+                    break;
                 }
             }
         }
 
-        return new HashMap<>();
+        addCentroid(last);
+        return recordAsMap(last);
     }
 
-    public LinkedList<String> getAttrNames() {
-        return attrNames;
+    private void addCentroid(int index) {
+        indicesOfCentroids.set(index);
+
+        if (nearestCentroidDistances == null) {
+            nearestCentroidDistances = new double[size];
+            Arrays.fill(nearestCentroidDistances, Double.POSITIVE_INFINITY);
+        }
+
+        double total = 0.0;
+        for (int i = 0; i < size; i++) {
+            double dist = squaredDistance(i, index);
+            if (dist < nearestCentroidDistances[i]) {
+                nearestCentroidDistances[i] = dist;
+            }
+            total += weight(i) * nearestCentroidDistances[i];
+        }
+        nearestCentroidTotal = total;
     }
 
-    public LinkedList<Record> getRecords() {
+    public List<String> getAttrNames() {
+        return Collections.unmodifiableList(Arrays.asList(attrNames));
+    }
+
+    /* Copies of the records for legacy callers: every call builds a new list of new
+     * Records, changing them does not change the data set */
+    public List<Record> getRecords() {
+        List<Record> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Record record = new Record(recordAsMap(i));
+            if (clusterNumbers[i] >= 0) {
+                record.setClusterNo(clusterNumbers[i]);
+            }
+            records.add(record);
+        }
         return records;
     }
 
+    public double getWeight(int index) {
+        return weight(index);
+    }
+
+    public int getClusterNo(int index) {
+        return clusterNumbers[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
     public Double getMin(String attrName) {
-        return minimums.get(attrName);
+        Integer attr = attrIndices.get(attrName);
+        return attr == null || size == 0 ? null : minimums[attr];
     }
 
     public Double getMax(String attrName) {
-        return maximums.get(attrName);
+        Integer attr = attrIndices.get(attrName);
+        return attr == null || size == 0 ? null : maximums[attr];
     }
 }
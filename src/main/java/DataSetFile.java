@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* Columnar binary form of a DataSet, see DataSet.readBinary and writeBinary. Reading
+ * and writing go through memory mapped columns (FileChannel.map), a copy between the
+ * page cache and the arrays, instead of text to parse and print. Little endian:
+ *   "KMDS", int version (1), int records, int attributes, int flags (1: weighted)
+ *   per attribute, its name (short length and UTF-8 bytes) and the width of its
+ *   values, a byte: 4 for floats, 8 for doubles
+ *   when weighted, the width of the weights
+ *   then the columns one after the other: the values of every attribute, the weights
+ *   when weighted, and the cluster of every record as ints, -1 when unassigned.
+ * A column is written as floats when every value of it comes back the same from a
+ * float, as colors and pixel counts do, so files are half the size without losing
+ * anything. Columns are mapped one by one, each must stay under 2 GB. */
+public class DataSetFile {
+    private static final int MAGIC = 0x53444d4b; // "KMDS" read little endian
+    private static final int VERSION = 1;
+    private static final int WEIGHTED = 1;
+
+    private final String[] attrNames;
+    private final double[] values;
+    private final double[] weights;
+    private final int[] clusterNumbers;
+
+    private DataSetFile(String[] attrNames, double[] values, double[] weights, int[] clusterNumbers) {
+        this.attrNames = attrNames;
+        this.values = values;
+        this.weights = weights;
+        this.clusterNumbers = clusterNumbers;
+    }
+
+    String[] getAttrNames() {
+        return attrNames;
+    }
+
+    /* Interleaved like DataSet's, record after record */
+    double[] getValues() {
+        return values;
+    }
+
+    /* Null when the records were not weighted */
+    double[] getWeights() {
+        return weights;
+    }
+
+    int[] getClusterNumbers() {
+        return clusterNumbers;
+    }
+
+    int size() {
+        return clusterNumbers.length;
+    }
+
+    /* Writes the first size records of values (interleaved), weights may be null */
+    static void write(Path file, String[] attrNames, double[] values, int size, double[] weights, int[] clusterNumbers) throws IOException {
+        int dimensions = attrNames.length;
+        int[] widths = new int[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            widths[d] = fitsFloats(values, d, dimensions, size) ? 4 : 8;
+        }
+        int weightWidth = weights != null && fitsFloats(weights, 0, 1, size) ? 4 : 8;
+
+        byte[][] names = new byte[dimensions][];
+        int headerBytes = 20;
+        for (int d = 0; d < dimensions; d++) {
+            names[d] = attrNames[d].getBytes(StandardCharsets.UTF_8);
+            if (names[d].length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Attribute name too long: " + attrNames[d].substring(0, 32) + "...");
+            }
+            headerBytes += 2 + names[d].length + 1;
+        }
+        headerBytes += weights != null ? 1 : 0;
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(dimensions).putInt(weights != null ? WEIGHTED : 0);
+        for (int d = 0; d < dimensions; d++) {
+            header.putShort((short) names[d].length).put(names[d]).put((byte) widths[d]);
+        }
+        if (weights != null) {
+            header.put((byte) weightWidth);
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            long position = headerBytes;
+            for (int d = 0; d < dimensions; d++) {
+                position = writeColumn(channel, position, values, d, dimensions, size, widths[d]);
+            }
+            if (weights != null) {
+                position = writeColumn(channel, position, weights, 0, 1, size, weightWidth);
+            }
+
+            MappedByteBuffer column = map(channel, FileChannel.MapMode.READ_WRITE, position, size, 4);
+            column.asIntBuffer().put(clusterNumbers, 0, size);
+        }
+    }
+
+    // the column of attribute d out of interleaved values, returns the position after it
+    private static long writeColumn(FileChannel channel, long position, double[] values, int d, int dimensions, int size, int width) throws IOException {
+        MappedByteBuffer column = map(channel, FileChannel.MapMode.READ_WRITE, position, size, width);
+        if (width == 4) {
+            FloatBuffer floats = column.asFloatBuffer();
+            for (int i = 0; i < size; i++) {
+                floats.put(i, (float) values[i * dimensions + d]);
+            }
+        } else {
+            DoubleBuffer doubles = column.asDoubleBuffer();
+            for (int i = 0; i < size; i++) {
+                doubles.put(i, values[i * dimensions + d]);
+            }
+        }
+        return position + (long) size * width;
+    }
+
+    private static boolean fitsFloats(double[] values, int d, int dimensions, int size) {
+        for (int i = 0; i < size; i++) {
+            double value = values[i * dimensions + d];
+            if (Double.doubleToLongBits((float) value) != Double.doubleToLongBits(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static DataSetFile read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(fileSize, 1 << 16)).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // reads up to the whole header, file permitting
+            }
+            header.flip();
+
+            try {
+                if (header.remaining() < 20 || header.getInt() != MAGIC) {
+                    throw new IOException(file + " is not a data set file.");
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException(file + " is a version " + version + " data set file, only version " + VERSION + " is supported.");
+                }
+                int size = header.getInt();
+                int dimensions = header.getInt();
+                boolean weighted = (header.getInt() & WEIGHTED) != 0;
+                if (size < 0 || dimensions < 0 || (long) size * dimensions > Integer.MAX_VALUE - 8) {
+                    throw new IOException(file + " is corrupt, " + size + " records of " + dimensions + " attributes.");
+                }
+
+                String[] attrNames = new String[dimensions];
+                int[] widths = new int[dimensions];
+                for (int d = 0; d < dimensions; d++) {
+                    byte[] name = new byte[header.getShort()];
+                    header.get(name);
+                    attrNames[d] = new String(name, StandardCharsets.UTF_8);
+                    widths[d] = width(header.get(), file);
+                }
+                int weightWidth = weighted ? width(header.get(), file) : 0;
+
+                long expected = header.position() + 4L * size + (long) size * weightWidth;
+                for (int width : widths) {
+                    expected += (long) size * width;
+                }
+                if (fileSize < expected) {
+                    throw new IOException(file + " is truncated, " + fileSize + " bytes instead of " + expected + ".");
+                }
+
+                long position = header.position();
+                double[] values = new double[size * dimensions];
+                for (int d = 0; d < dimensions; d++) {
+                    position = readColumn(channel, position, values, d, dimensions, size, widths[d]);
+                }
+                double[] weights = null;
+                if (weighted) {
+                    weights = new double[size];
+                    position = readColumn(channel, position, weights, 0, 1, size, weightWidth);
+                }
+
+                int[] clusterNumbers = new int[size];
+                IntBuffer clusters = map(channel, FileChannel.MapMode.READ_ONLY, position, size, 4).asIntBuffer();
+                clusters.get(clusterNumbers);
+
+                return new DataSetFile(attrNames, values, weights, clusterNumbers);
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                throw new IOException(file + " is corrupt, its header is cut short.", e);
+            }
+        }
+    }
+
+    private static long readColumn(FileChannel channel, long position, double[] values, int d, int dimensions, int size, int width) throws IOException {
+        MappedByteBuffer column = map(channel, FileChannel.MapMode.READ_ONLY, position, size, width);
+        if (width == 4) {
+            FloatBuffer floats = column.asFloatBuffer();
+            for (int i = 0; i < size; i++) {
+                values[i * dimensions + d] = floats.get(i);
+            }
+        } else {
+            DoubleBuffer doubles = column.asDoubleBuffer();
+            for (int i = 0; i < size; i++) {
+                values[i * dimensions + d] = doubles.get(i);
+            }
+        }
+        return position + (long) size * width;
+    }
+
+    private static int width(byte width, Path file) throws IOException {
+        if (width != 4 && width != 8) {
+            throw new IOException(file + " is corrupt, columns are 4 or 8 bytes wide, not " + width + ".");
+        }
+        return width;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, int size, int width) throws IOException {
+        long bytes = (long) size * width;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("A column of " + size + " values is over the 2 GB a mapping can hold.");
+        }
+        MappedByteBuffer column = channel.map(mode, position, bytes);
+        column.order(ByteOrder.LITTLE_ENDIAN);
+        return column;
+    }
+}
@@ -0,0 +1,78 @@
+/* Nearest centroid of a block of points by brute force, every point against every
+ * centroid: the scan KMeans runs when K is too small for a CentroidIndex to pay off.
+ * The scalar kernel below works one point at a time. VectorDistanceKernel (in
+ * src/main/java-vector) works on a vector of points at once with the incubating Vector
+ * API, it is only compiled by the vector profile (mvn -Pvector package, Java 17) and
+ * only usable when the JVM runs with --add-modules jdk.incubator.vector. get() picks it
+ * by reflection at startup when it can, and the scalar kernel otherwise or when
+ * -Dsplitter.kernel=scalar is set.
+ * Both sum the squared differences attribute after attribute without fused multiply
+ * adds, start from Double.MAX_VALUE and keep the first centroid on ties, so they give
+ * the same distances and assignments as KMeans.nearestCentroid, to the last bit. */
+public abstract class DistanceKernel {
+    private static final DistanceKernel KERNEL = load();
+
+    /* The kernel chosen at startup */
+    public static DistanceKernel get() {
+        return KERNEL;
+    }
+
+    private static DistanceKernel load() {
+        if (!"scalar".equals(System.getProperty("splitter.kernel")) && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (DistanceKernel) Class.forName("VectorDistanceKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // built without the vector profile
+            }
+        }
+        return new Scalar();
+    }
+
+    /* For display, e.g. "scalar" */
+    public abstract String getName();
+
+    /* Number of centroids from which a CentroidIndex finds nearest centroids faster
+     * than this kernel scans them */
+    public abstract int getIndexMinK();
+
+    /* For every point i from from to to - 1 of values (interleaved layout), the index of
+     * the nearest of the K centroids goes to nearest[i - from] and the squared distance
+     * to it to distances[i - from] */
+    public abstract void nearest(double[] values, int from, int to, int dimensions, double[] centroids, int K, int[] nearest, double[] distances);
+
+    /* Same as nearest for one point, the slot being i - from */
+    protected static void nearestOne(double[] values, int i, int slot, int dimensions, double[] centroids, int K, int[] nearest, double[] distances) {
+        double minDist = Double.MAX_VALUE;
+        int closest = 0;
+
+        for (int c = 0; c < K; c++) {
+            double dist = PointSet.squaredDistance(values, i, centroids, c, dimensions);
+            if (dist < minDist) {
+                minDist = dist;
+                closest = c;
+            }
+        }
+
+        nearest[slot] = closest;
+        distances[slot] = minDist;
+    }
+
+    static class Scalar extends DistanceKernel {
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public int getIndexMinK() {
+            return KMeans.INDEX_MIN_K;
+        }
+
+        @Override
+        public void nearest(double[] values, int from, int to, int dimensions, double[] centroids, int K, int[] nearest, double[] distances) {
+            for (int i = from; i < to; i++) {
+                nearestOne(values, i, i - from, dimensions, centroids, K, nearest, distances);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/* Clusters consecutive frames of a video (or near identical renders) carrying the
+ * centroids from one frame to the next. The first frame is seeded, every following one
+ * starts from the previous centroids and usually converges in a couple of iterations.
+ * A coarse histogram of the previous frame (16 levels per channel, so that a slight
+ * change of lighting does not look like a new scene) is kept to measure how much
+ * changed: a change above the scene cut threshold reseeds from scratch, an exactly
+ * identical frame reuses the centroids without iterating.
+ * Cluster c of a frame keeps describing the same colors as cluster c of the previous
+ * one, so layer numbers are stable. Warm started clusters keep their index by
+ * construction, reseeded ones are matched to the previous centroids, closest pairs
+ * first. */
+public class FrameSequence {
+    private final int K;
+    private KMeans.Algorithm algorithm = KMeans.Algorithm.HAMERLY;
+    private ColorSpace colorSpace = ColorSpace.RGB;
+    private Seeding seeding = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, System.nanoTime());
+    private double sceneCutThreshold = 0.5;
+    private int maxIterations = 300;
+    private double SSETolerance = 0.0;
+    private ForkJoinPool pool;
+
+    private double[] centroids;
+    private ColorHistogram previous;
+    private int[] previousCoarse;
+    private double lastDelta = Double.NaN;
+    private boolean lastReseeded;
+
+    public FrameSequence(int K) {
+        if (K <= 0) {
+            throw new IllegalArgumentException("K must be positive.");
+        }
+
+        this.K = K;
+    }
+
+    public FrameSequence setAlgorithm(KMeans.Algorithm algorithm) {
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    /* Space the frames are clustered in, to be set before the first frame */
+    public FrameSequence setColorSpace(ColorSpace colorSpace) {
+        this.colorSpace = colorSpace;
+        return this;
+    }
+
+    public FrameSequence setSeeding(Seeding seeding) {
+        this.seeding = seeding;
+        return this;
+    }
+
+    /* Share of the pixels whose color changed, from 0 to 1, above which a frame is
+     * clustered from scratch instead of from the previous centroids */
+    public FrameSequence setSceneCutThreshold(double sceneCutThreshold) {
+        if (sceneCutThreshold < 0.0 || sceneCutThreshold > 1.0) {
+            throw new IllegalArgumentException("Scene cut threshold must be between 0 and 1.");
+        }
+
+        this.sceneCutThreshold = sceneCutThreshold;
+        return this;
+    }
+
+    public FrameSequence setMaxIterations(int maxIterations) {
+        if (maxIterations <= 0) {
+            throw new IllegalArgumentException("Max iterations must be positive.");
+        }
+
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /* See KMeans.setSSETolerance, a small tolerance lets warm started frames stop
+     * after a few iterations instead of polishing the last pixels */
+    public FrameSequence setSSETolerance(double SSETolerance) {
+        if (SSETolerance < 0.0) {
+            throw new IllegalArgumentException("SSE tolerance can not be negative.");
+        }
+
+        this.SSETolerance = SSETolerance;
+        return this;
+    }
+
+    public FrameSequence setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /* Starts the sequence from known centroids, as returned by getCentroids or
+     * KMeansResult.getCentroids, instead of seeding the first frame */
+    public FrameSequence setCentroids(double[] centroids) {
+        this.centroids = centroids.clone();
+        return this;
+    }
+
+    /* Clusters the next frame, the assignments are indexed like the frame's colors */
+    public KMeansResult next(ColorHistogram frame) {
+        return next(frame, null);
+    }
+
+    /* Same as above, the iterations of this frame going to the listener unless it is null */
+    public synchronized KMeansResult next(ColorHistogram frame, KMeansListener listener) {
+        PointSet points = new DataSet(frame, colorSpace).toPointSet();
+        if (centroids != null && centroids.length != K * points.getDimensions()) {
+            throw new IllegalArgumentException("Expected " + K + " centroids of " + points.getDimensions() + " attributes.");
+        }
+
+        int[] coarse = coarseHistogram(frame);
+        lastDelta = previous == null ? Double.NaN : delta(previousCoarse, coarse);
+        lastReseeded = centroids == null || lastDelta > sceneCutThreshold;
+
+        KMeansResult result;
+        if (lastDelta == 0.0 && identical(previous, frame)) {
+            // same colors, same counts: the previous centroids are still the answer
+            result = assign(points, centroids);
+        } else {
+            KMeans kmeans = new KMeans(K).setAlgorithm(algorithm).setMaxIterations(maxIterations).setSSETolerance(SSETolerance).setPool(pool);
+            if (listener != null) {
+                kmeans.addListener(listener);
+            }
+            if (lastReseeded) {
+                long start = System.nanoTime();
+                double[] seeds = seed(points);
+                if (listener != null) {
+                    listener.onSeeded(System.nanoTime() - start);
+                }
+                result = kmeans.run(points, seeds);
+                if (centroids != null) {
+                    result = renumber(result, matchClusters(centroids, result.getCentroids(), points.getDimensions()), points.getDimensions());
+                }
+            } else {
+                result = kmeans.run(points, centroids);
+            }
+        }
+
+        centroids = result.getCentroids();
+        previous = frame;
+        previousCoarse = coarse;
+        return result;
+    }
+
+    /* Seeds K centroids, repeating the seeds when the frame has fewer colors than K */
+    private double[] seed(PointSet points) {
+        int dimensions = points.getDimensions();
+        double[] seeds = seeding.select(points, Math.min(K, points.size()), pool);
+        double[] result = new double[K * dimensions];
+        for (int c = 0; c < K; c++) {
+            System.arraycopy(seeds, (c % (seeds.length / dimensions)) * dimensions, result, c * dimensions, dimensions);
+        }
+        return result;
+    }
+
+    private KMeansResult assign(PointSet points, double[] centroids) {
+        int[] assignments = new int[points.size()];
+        double[] distance = new double[1];
+        double SSE = 0.0;
+        CentroidIndex index = K >= KMeans.INDEX_MIN_K ? new CentroidIndex(centroids, points.getDimensions()) : null;
+
+        for (int i = 0; i < points.size(); i++) {
+            assignments[i] = index != null ? index.nearest(points.getValues(), i * points.getDimensions(), distance) : KMeans.nearestCentroid(points, i, centroids, K, distance);
+            SSE += points.getWeight(i) * distance[0];
+        }
+
+        return new KMeansResult(centroids.clone(), assignments, SSE, 0, true);
+    }
+
+    /* Pixel counts of the colors with their 4 high bits per channel */
+    static int[] coarseHistogram(ColorHistogram frame) {
+        int[] bins = new int[1 << 16];
+        for (int c = 0; c < frame.size(); c++) {
+            int argb = frame.getColor(c);
+            int bin = (argb >>> 28) << 12 | ((argb >>> 20) & 0xF) << 8 | ((argb >>> 12) & 0xF) << 4 | ((argb >>> 4) & 0xF);
+            bins[bin] += frame.getCount(c);
+        }
+        return bins;
+    }
+
+    /* Share of the pixels that moved to another bin: half the sum of the absolute count
+     * differences over the average pixel count, 0 for the same histogram, 1 for
+     * histograms without a bin in common */
+    static double delta(int[] before, int[] after) {
+        long changed = 0;
+        long total = 0;
+
+        for (int bin = 0; bin < before.length; bin++) {
+            changed += Math.abs(after[bin] - before[bin]);
+            total += after[bin] + before[bin];
+        }
+
+        return total == 0 ? 0.0 : (double) changed / total;
+    }
+
+    private static boolean identical(ColorHistogram before, ColorHistogram after) {
+        if (before.size() != after.size()) {
+            return false;
+        }
+
+        for (int c = 0; c < after.size(); c++) {
+            int old = before.indexOf(after.getColor(c));
+            if (old < 0 || before.getCount(old) != after.getCount(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* matching[n] is the previous cluster new cluster n takes the place of. Pairs are
+     * taken closest first, which is not always the optimal assignment but is stable
+     * and good enough when clusters moved less than they are apart */
+    static int[] matchClusters(double[] before, double[] after, int dimensions) {
+        int K = before.length / dimensions;
+        double[] distances = new double[K * K];
+
+        for (int b = 0; b < K; b++) {
+            for (int a = 0; a < K; a++) {
+                distances[b * K + a] = PointSet.squaredDistance(before, b, after, a, dimensions);
+            }
+        }
+
+        Integer[] order = new Integer[K * K];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(distances[x], distances[y]));
+
+        int[] matching = new int[K];
+        Arrays.fill(matching, -1);
+        boolean[] taken = new boolean[K];
+        for (int pair : order) {
+            int b = pair / K;
+            int a = pair % K;
+            if (!taken[b] && matching[a] < 0) {
+                taken[b] = true;
+                matching[a] = b;
+            }
+        }
+
+        return matching;
+    }
+
+    private static KMeansResult renumber(KMeansResult result, int[] matching, int dimensions) {
+        double[] centroids = new double[result.getCentroids().length];
+        for (int a = 0; a < matching.length; a++) {
+            System.arraycopy(result.getCentroids(), a * dimensions, centroids, matching[a] * dimensions, dimensions);
+        }
+
+        int[] assignments = result.getAssignments().clone();
+        for (int i = 0; i < assignments.length; i++) {
+            assignments[i] = matching[assignments[i]];
+        }
+
+        return new KMeansResult(centroids, assignments, result.getSSE(), result.getIterations(), result.isConverged());
+    }
+
+    /* Centroids of the last frame, null before the first one */
+    public synchronized double[] getCentroids() {
+        return centroids == null ? null : centroids.clone();
+    }
+
+    /* Share of the pixels that changed between the last two frames, NaN after the first one */
+    public synchronized double getLastDelta() {
+        return lastDelta;
+    }
+
+    /* Whether the last frame was seeded from scratch rather than warm started */
+    public synchronized boolean isLastReseeded() {
+        return lastReseeded;
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.Arrays;
+
+/* Per point distance bounds for Hamerly's accelerated K-Means. For every point it
+ * keeps an upper bound of the distance to its assigned centroid and a lower bound of
+ * the distance to any other centroid. A point whose upper bound is below both its
+ * lower bound and half the distance from its centroid to the closest other centroid
+ * can not change cluster, so it is skipped without computing a single distance.
+ * Skips only happen when the assigned centroid is strictly the closest one, every
+ * other case falls back to the same scan as Lloyd's, so both give the same
+ * assignments. Bounds are plain (not squared) distances.
+ * With a CentroidIndex the separations and the full scans are nearest two searches in
+ * the index, which give the same distances as the scans. */
+class HamerlyBounds {
+    // keeps rounding in the bounds from ever skipping a point that is really on a tie
+    static final double SLACK = 1e-10;
+
+    private final double[] upper;
+    private final double[] lower;
+    private final double[] halfSeparation;
+    private final double[] previous;
+    private final double[] shifts;
+    private final int dimensions;
+    private double maxShift;
+    private double secondMaxShift;
+    private int maxShiftIndex;
+    private boolean initialized;
+
+    HamerlyBounds(int size, int K, int dimensions) {
+        upper = new double[size];
+        lower = new double[size];
+        halfSeparation = new double[K];
+        previous = new double[K * dimensions];
+        shifts = new double[K];
+        this.dimensions = dimensions;
+    }
+
+    /* Half of the distance from every centroid to its closest other centroid, done
+     * once per iteration before the assignment pass. index may be null */
+    void prepare(double[] centroids, CentroidIndex index) {
+        int K = halfSeparation.length;
+        Arrays.fill(halfSeparation, Double.POSITIVE_INFINITY);
+
+        if (index != null) {
+            // a centroid is its own closest, the second closest is its closest other
+            double[] nearestTwo = new double[2];
+            for (int a = 0; a < K; a++) {
+                index.nearestTwo(centroids, a * dimensions, nearestTwo);
+                halfSeparation[a] = Math.sqrt(nearestTwo[1]) / 2.0;
+            }
+            return;
+        }
+
+        for (int a = 0; a < K; a++) {
+            for (int b = a + 1; b < K; b++) {
+                double dist = Math.sqrt(PointSet.squaredDistance(centroids, a, centroids, b, dimensions)) / 2.0;
+                if (dist < halfSeparation[a]) {
+                    halfSeparation[a] = dist;
+                }
+                if (dist < halfSeparation[b]) {
+                    halfSeparation[b] = dist;
+                }
+            }
+        }
+    }
+
+    /* Returns the cluster of point i, which was assigned to current on the previous
+     * iteration. Bounds are first moved by how much the centroids moved. index may be
+     * null, distances is scratch space of at least 2 doubles for its searches and the
+     * number of distances computed is added to evaluations[0] */
+    int assign(PointSet points, int i, double[] centroids, CentroidIndex index, int current, double[] distances, long[] evaluations) {
+        if (initialized) {
+            upper[i] += shifts[current];
+            lower[i] -= current == maxShiftIndex ? secondMaxShift : maxShift;
+
+            double bound = Math.max(halfSeparation[current], lower[i]) * (1.0 - SLACK);
+            if (upper[i] < bound) {
+                return current;
+            }
+
+            // tighten the upper bound, it may be enough to keep the point
+            upper[i] = Math.sqrt(points.squaredDistance(i, centroids, current));
+            evaluations[0]++;
+            if (upper[i] < bound) {
+                return current;
+            }
+        }
+
+        if (index != null) {
+            int closest = index.nearestTwo(points.getValues(), i * dimensions, distances, evaluations);
+            upper[i] = Math.sqrt(distances[0]);
+            lower[i] = Math.sqrt(distances[1]);
+            return closest;
+        }
+
+        int K = halfSeparation.length;
+        evaluations[0] += K;
+        double first = Double.POSITIVE_INFINITY;
+        double second = Double.POSITIVE_INFINITY;
+        int closest = 0;
+
+        for (int c = 0; c < K; c++) {
+            double dist = points.squaredDistance(i, centroids, c);
+            if (dist < first) {
+                second = first;
+                first = dist;
+                closest = c;
+            } else if (dist < second) {
+                second = dist;
+            }
+        }
+
+        upper[i] = Math.sqrt(first);
+        lower[i] = Math.sqrt(second);
+        return closest;
+    }
+
+    /* Keeps a copy of the centroids before the update step */
+    void beforeUpdate(double[] centroids) {
+        System.arraycopy(centroids, 0, previous, 0, previous.length);
+    }
+
+    /* Records how far every centroid moved during the update step */
+    void afterUpdate(double[] centroids) {
+        maxShift = 0.0;
+        secondMaxShift = 0.0;
+        maxShiftIndex = -1;
+
+        for (int c = 0; c < shifts.length; c++) {
+            double shift = Math.sqrt(PointSet.squaredDistance(previous, c, centroids, c, dimensions));
+            if (Double.isNaN(shift)) {
+                // a NaN centroid never gets points, one that just left NaN moved arbitrarily far
+                shift = Double.isNaN(centroids[c * dimensions]) ? 0.0 : Double.POSITIVE_INFINITY;
+            }
+            shifts[c] = shift;
+
+            if (shift > maxShift) {
+                secondMaxShift = maxShift;
+                maxShift = shift;
+                maxShiftIndex = c;
+            } else if (shift > secondMaxShift) {
+                secondMaxShift = shift;
+            }
+        }
+
+        initialized = true;
+    }
+}
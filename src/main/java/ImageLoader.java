@@ -0,0 +1,141 @@
+import javax.imageio.ImageIO;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/* Reads the pixels of an image as packed ARGB ints in row-major order, straight from
+ * the raster's data buffer for the layouts ImageIO usually returns (TYPE_INT_ARGB,
+ * TYPE_INT_RGB, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR and 8 bit indexed images). Any other
+ * layout goes through bulk getRGB calls, one strip of rows at a time, which still
+ * avoids one color model call per pixel. */
+public class ImageLoader {
+    static final int STRIP_ROWS = 64;
+
+    private ImageLoader() {
+    }
+
+    public static BufferedImage read(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("No image reader for " + file + ".");
+        }
+        return image;
+    }
+
+    /* name only goes into the error message */
+    public static BufferedImage read(InputStream in, String name) throws IOException {
+        BufferedImage image = ImageIO.read(in);
+        if (image == null) {
+            throw new IOException("No image reader for " + name + ".");
+        }
+        return image;
+    }
+
+    /* Every pixel of the image, argb[y * width + x] */
+    public static int[] readARGB(BufferedImage image) {
+        int[] argb = new int[image.getWidth() * image.getHeight()];
+        readRows(image, 0, image.getHeight(), argb);
+        return argb;
+    }
+
+    /* Copies rows y to y + rows - 1 into argb, starting at index 0 */
+    public static void readRows(BufferedImage image, int y, int rows, int[] argb) {
+        int width = image.getWidth();
+        WritableRaster raster = image.getRaster();
+
+        // sub images share a larger data buffer, the direct paths below assume they don't
+        boolean direct = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0 && raster.getParent() == null;
+
+        if (direct) {
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_ARGB:
+                case BufferedImage.TYPE_INT_RGB:
+                    readPackedInts(image, raster, y, rows, argb, image.getType() == BufferedImage.TYPE_INT_RGB);
+                    return;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                case BufferedImage.TYPE_4BYTE_ABGR:
+                    readInterleavedBytes(raster, width, y, rows, argb, image.getType() == BufferedImage.TYPE_4BYTE_ABGR);
+                    return;
+                case BufferedImage.TYPE_BYTE_INDEXED:
+                    if (image.getColorModel() instanceof IndexColorModel && raster.getSampleModel() instanceof PixelInterleavedSampleModel) {
+                        readIndexed(image, raster, width, y, rows, argb);
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        for (int row = 0; row < rows; row += STRIP_ROWS) {
+            int strip = Math.min(STRIP_ROWS, rows - row);
+            image.getRGB(0, y + row, width, strip, argb, row * width, width);
+        }
+    }
+
+    private static void readPackedInts(BufferedImage image, WritableRaster raster, int y, int rows, int[] argb, boolean opaque) {
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = model.getScanlineStride();
+        int offset = raster.getDataBuffer().getOffset();
+        int width = image.getWidth();
+
+        for (int row = 0; row < rows; row++) {
+            int from = offset + (y + row) * stride;
+            int to = row * width;
+            if (opaque) {
+                for (int x = 0; x < width; x++) {
+                    argb[to + x] = 0xFF000000 | (data[from + x] & 0xFFFFFF);
+                }
+            } else {
+                System.arraycopy(data, from, argb, to, width);
+            }
+        }
+    }
+
+    private static void readInterleavedBytes(WritableRaster raster, int width, int y, int rows, int[] argb, boolean alpha) {
+        PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) raster.getSampleModel();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = model.getScanlineStride();
+        int pixelStride = model.getPixelStride();
+        int[] bands = model.getBandOffsets();
+        int offset = raster.getDataBuffer().getOffset();
+
+        // band order is R, G, B (, A) whatever the byte order in memory
+        int red = bands[0];
+        int green = bands[1];
+        int blue = bands[2];
+        int alphaBand = alpha ? bands[3] : 0;
+
+        for (int row = 0; row < rows; row++) {
+            int from = offset + (y + row) * stride;
+            int to = row * width;
+            for (int x = 0; x < width; x++) {
+                int p = from + x * pixelStride;
+                int a = alpha ? data[p + alphaBand] & 0xFF : 0xFF;
+                argb[to + x] = a << 24 | (data[p + red] & 0xFF) << 16 | (data[p + green] & 0xFF) << 8 | (data[p + blue] & 0xFF);
+            }
+        }
+    }
+
+    private static void readIndexed(BufferedImage image, WritableRaster raster, int width, int y, int rows, int[] argb) {
+        IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+        PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) raster.getSampleModel();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = model.getScanlineStride();
+        int offset = raster.getDataBuffer().getOffset() + model.getBandOffsets()[0];
+
+        // the whole palette, padded so any byte is a valid index
+        int[] palette = new int[256];
+        colorModel.getRGBs(palette);
+
+        for (int row = 0; row < rows; row++) {
+            int from = offset + (y + row) * stride;
+            int to = row * width;
+            for (int x = 0; x < width; x++) {
+                argb[to + x] = palette[data[from + x] & 0xFF];
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/* Samples random pixels of one image or of a sequence of frames, every pixel of
+ * every frame being equally likely. Nothing is copied out of the images. */
+public class ImageSampler implements PointSampler {
+    private final List<BufferedImage> frames;
+    private final long[] cumulativePixels;
+    private ColorSpace space = ColorSpace.RGB;
+
+    public ImageSampler(BufferedImage image) {
+        this(List.of(image));
+    }
+
+    public ImageSampler(List<BufferedImage> frames) {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("No frames to sample.");
+        }
+
+        this.frames = frames;
+        cumulativePixels = new long[frames.size()];
+
+        long total = 0;
+        for (int f = 0; f < frames.size(); f++) {
+            total += (long) frames.get(f).getWidth() * frames.get(f).getHeight();
+            cumulativePixels[f] = total;
+        }
+    }
+
+    public ImageSampler setColorSpace(ColorSpace space) {
+        this.space = space;
+        return this;
+    }
+
+    @Override
+    public String[] getAttrNames() {
+        return space.getAttrNames();
+    }
+
+    @Override
+    public void sample(double[] batch, int count, Random random) {
+        long total = cumulativePixels[cumulativePixels.length - 1];
+
+        for (int i = 0; i < count; i++) {
+            long pixel = (long) (random.nextDouble() * total);
+            int frame = Arrays.binarySearch(cumulativePixels, pixel + 1);
+            if (frame < 0) {
+                frame = -frame - 1;
+            }
+
+            BufferedImage image = frames.get(frame);
+            long offset = pixel - (frame == 0 ? 0 : cumulativePixels[frame - 1]);
+            int x = (int) (offset % image.getWidth());
+            int y = (int) (offset / image.getWidth());
+
+            int argb = image.getRGB(x, y);
+            space.toPoint(argb, batch, i * 4);
+        }
+    }
+}
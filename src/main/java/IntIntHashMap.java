@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/* Open addressing int to int map with linear probing, keys and values live in two
+ * parallel int arrays so lookups never box. 0 marks an empty slot, the key 0 itself
+ * (transparent black in ARGB) is kept aside. */
+public class IntIntHashMap {
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    // 32 - log2(capacity), the slot of a key is the top bits of its hash
+    private int shift;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+    private final int missingValue;
+
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        this.missingValue = missingValue;
+    }
+
+    private int slot(int key) {
+        // Fibonacci hashing spreads neighbouring colors over the table, its best mixed
+        // bits are the top ones whatever the capacity
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    /* Returns the value of the key, or the missing value given at construction */
+    public int get(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == EMPTY) {
+                return missingValue;
+            }
+        }
+    }
+
+    /* Returns the value already mapped to the key, or maps it to value and returns
+     * the missing value when the key is new */
+    public int putIfAbsent(int key, int value) {
+        if (key == EMPTY) {
+            if (hasZeroKey) {
+                return zeroValue;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            size++;
+            return missingValue;
+        }
+
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+                return missingValue;
+            }
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        shift--;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = slot(oldKeys[j]);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,52 @@
+public class IterationStats {
+    private final int iteration;
+    private final double SSE;
+    private final double relativeImprovement;
+    private final double maxCentroidShift;
+    private final long distanceEvaluations;
+    private final long elapsedNanos;
+
+    public IterationStats(int iteration, double SSE, double relativeImprovement, double maxCentroidShift, long distanceEvaluations, long elapsedNanos) {
+        this.iteration = iteration;
+        this.SSE = SSE;
+        this.relativeImprovement = relativeImprovement;
+        this.maxCentroidShift = maxCentroidShift;
+        this.distanceEvaluations = distanceEvaluations;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    /* SSE of the assignment done in this iteration */
+    public double getSSE() {
+        return SSE;
+    }
+
+    /* (previous SSE - SSE) / previous SSE, positive infinity on the first iteration */
+    public double getRelativeImprovement() {
+        return relativeImprovement;
+    }
+
+    /* Largest euclidean distance travelled by a centroid during the update step */
+    public double getMaxCentroidShift() {
+        return maxCentroidShift;
+    }
+
+    /* Point to centroid distances computed by the assignment step, Hamerly's bounds and
+     * the centroid index show up as far fewer than points * K */
+    public long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Iteration " + iteration + ": SSE " + SSE + ", improvement " + relativeImprovement
+                + ", max centroid shift " + maxCentroidShift + ", " + distanceEvaluations + " distances, " + (elapsedNanos / 1_000_000) + " ms.";
+    }
+}
@@ -0,0 +1,305 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/* Metrics of one job, one image split by Main or by BatchProcessor: the time spent in
+ * every stage (decode, histogram, palette, cluster, output...), the K-Means iterations
+ * with the SSE after each one and the distances they computed, the heap in use and the
+ * bytes written. Passed to KMeans as a listener it also times seeding ("seed") and the
+ * iterations ("iterate"), both part of the caller's cluster stage.
+ * Exported as JSON with toJson / writeJson, and as JDK Flight Recorder events
+ * (splitter.Stage and splitter.Iteration) whenever a recording is running, e.g. with
+ * java -XX:StartFlightRecording:filename=split.jfr ...
+ * Nothing is recorded per pixel or per color, only at stage and iteration boundaries:
+ * a stage costs two nanoTime calls and a heap usage read, an iteration a few field
+ * updates, and events are only filled in when JFR has them enabled. So it stays on.
+ * Stages of one job may run on several threads, the recording methods are synchronized. */
+public class JobMetrics implements KMeansListener {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final String job;
+    private final long start = System.nanoTime();
+    // stage name to nanoseconds, in the order stages first finished
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private final List<Double> SSE = new ArrayList<>();
+    private int width;
+    private int height;
+    private int colors;
+    private int iterations;
+    private long distanceEvaluations;
+    private long bytesWritten;
+    private long peakHeapBytes;
+    private long totalNanos = -1;
+
+    public JobMetrics(String job) {
+        this.job = job;
+    }
+
+    /* Starts timing a stage, stop (or close) the returned Stage once it is done. A stage
+     * timed several times adds up */
+    public Stage stage(String name) {
+        return new Stage(name);
+    }
+
+    /* Runs work as the stage, which is stopped once work returns or throws, and returns
+     * what work returned */
+    public <T, E extends Exception> T time(String name, Work<T, E> work) throws E {
+        Stage stage = stage(name);
+        try {
+            return work.run();
+        } finally {
+            stage.stop();
+        }
+    }
+
+    /* The work of a stage given to time */
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /* One running stage, it is also a splitter.Stage event spanning the stage */
+    public class Stage implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final StageEvent event = new StageEvent();
+        private long nanos = -1;
+
+        private Stage(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        /* Records the stage, returns the nanoseconds it took. Only the first call counts */
+        public long stop() {
+            if (nanos >= 0) {
+                return nanos;
+            }
+
+            nanos = System.nanoTime() - start;
+            event.end();
+            if (event.shouldCommit()) {
+                event.job = job;
+                event.stage = name;
+                event.commit();
+            }
+            record(name, nanos);
+            return nanos;
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+
+    /* Adds a stage timed elsewhere */
+    public synchronized void record(String stage, long nanos) {
+        stageNanos.merge(stage, nanos, Long::sum);
+        peakHeapBytes = Math.max(peakHeapBytes, MEMORY.getHeapMemoryUsage().getUsed());
+    }
+
+    @Override
+    public void onSeeded(long elapsedNanos) {
+        record("seed", elapsedNanos);
+    }
+
+    @Override
+    public void onIteration(IterationStats stats) {
+        synchronized (this) {
+            iterations++;
+            SSE.add(stats.getSSE());
+            distanceEvaluations += stats.getDistanceEvaluations();
+        }
+        record("iterate", stats.getElapsedNanos());
+
+        IterationEvent event = new IterationEvent();
+        if (event.isEnabled()) {
+            event.job = job;
+            event.iteration = stats.getIteration();
+            event.SSE = stats.getSSE();
+            event.distanceEvaluations = stats.getDistanceEvaluations();
+            event.elapsed = stats.getElapsedNanos();
+            event.commit();
+        }
+    }
+
+    /* Size and number of distinct colors of the job's image */
+    public synchronized void describe(int width, int height, int colors) {
+        this.width = width;
+        this.height = height;
+        this.colors = colors;
+    }
+
+    public synchronized void addBytesWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    /* Ends the job, the total time is then fixed. Only the first call counts */
+    public synchronized void finish() {
+        if (totalNanos < 0) {
+            totalNanos = System.nanoTime() - start;
+            peakHeapBytes = Math.max(peakHeapBytes, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    public synchronized int getWidth() {
+        return width;
+    }
+
+    public synchronized int getHeight() {
+        return height;
+    }
+
+    public synchronized int getColors() {
+        return colors;
+    }
+
+    /* Time since the metrics were created, until finish once it is called */
+    public synchronized long getTotalNanos() {
+        return totalNanos >= 0 ? totalNanos : System.nanoTime() - start;
+    }
+
+    /* 0 for a stage that never ran */
+    public synchronized long getStageNanos(String stage) {
+        return stageNanos.getOrDefault(stage, 0L);
+    }
+
+    public synchronized int getIterations() {
+        return iterations;
+    }
+
+    /* SSE after every iteration, in order */
+    public synchronized double[] getSSETrajectory() {
+        double[] trajectory = new double[SSE.size()];
+        for (int i = 0; i < trajectory.length; i++) {
+            trajectory[i] = SSE.get(i);
+        }
+        return trajectory;
+    }
+
+    public synchronized long getDistanceEvaluations() {
+        return distanceEvaluations;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /* Highest heap usage seen at the end of a stage. The heap is shared by every job of
+     * the JVM, so with jobs running side by side it is the process's, not the job's */
+    public synchronized long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /* One JSON object, times in milliseconds */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"job\": ").append(quote(job));
+        json.append(",\n  \"width\": ").append(width);
+        json.append(",\n  \"height\": ").append(height);
+        json.append(",\n  \"colors\": ").append(colors);
+        json.append(",\n  \"total_ms\": ").append(millis(getTotalNanos()));
+
+        json.append(",\n  \"stages_ms\": {");
+        String separator = "";
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+            json.append(separator).append("\n    ").append(quote(stage.getKey())).append(": ").append(millis(stage.getValue()));
+            separator = ",";
+        }
+        json.append(separator.isEmpty() ? "}" : "\n  }");
+
+        json.append(",\n  \"iterations\": ").append(iterations);
+        json.append(",\n  \"sse\": [");
+        for (int i = 0; i < SSE.size(); i++) {
+            json.append(i > 0 ? ", " : "").append(number(SSE.get(i)));
+        }
+        json.append("]");
+        json.append(",\n  \"distance_evaluations\": ").append(distanceEvaluations);
+        json.append(",\n  \"peak_heap_bytes\": ").append(peakHeapBytes);
+        json.append(",\n  \"bytes_written\": ").append(bytesWritten);
+        json.append("\n}\n");
+
+        return json.toString();
+    }
+
+    public void writeJson(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(toJson());
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    // JSON has no NaN nor infinity
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    @Name("splitter.Stage")
+    @Label("Pipeline Stage")
+    @Category("Color Splitter")
+    static class StageEvent extends Event {
+        @Label("Job")
+        String job;
+
+        @Label("Stage")
+        String stage;
+    }
+
+    @Name("splitter.Iteration")
+    @Label("K-Means Iteration")
+    @Category("Color Splitter")
+    static class IterationEvent extends Event {
+        @Label("Job")
+        String job;
+
+        @Label("Iteration")
+        int iteration;
+
+        @Label("SSE")
+        double SSE;
+
+        @Label("Distance Evaluations")
+        long distanceEvaluations;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+}
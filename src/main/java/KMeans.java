@@ -0,0 +1,427 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/* Lloyd's K-Means over a PointSet. All the state lives in primitive arrays that are
+ * allocated once per run, so iterations do not create garbage.
+ * The assignment step and the centroid sums are done in the same pass. Points are
+ * split in fixed size chunks, each chunk accumulates its own per cluster sums and
+ * counts and the partial results are merged following the same tree whatever the
+ * number of threads, so a run gives the same result sequentially or in parallel.
+ * The SSE of each assignment is accumulated during that same pass. A run stops when
+ * the maximum number of iterations is reached, when the relative SSE improvement
+ * falls to the SSE tolerance or when no centroid moves more than the centroid
+ * epsilon.
+ * Weighted points count as many times as their weight in the centroids and the SSE.
+ * HAMERLY gives the same assignments as LLOYD but keeps distance bounds per point
+ * (see HamerlyBounds) and skips most distance computations once clusters settle.
+ * From INDEX_MIN_K clusters on, the centroids are put in a CentroidIndex at the start
+ * of every iteration and the nearest centroid searches go through it instead of
+ * scanning all K centroids, with the same results. LLOYD rather scans the centroids
+ * a chunk at a time with the DistanceKernel, SIMD when the JVM allows it, as long as
+ * K is below the kernel's own threshold. */
+public class KMeans {
+    static final int CHUNK_SIZE = 4096;
+    // below that a scan of the centroids beats walking the tree
+    static final int INDEX_MIN_K = 32;
+
+    public enum Algorithm {
+        LLOYD,
+        HAMERLY
+    }
+
+    private final int K;
+    private Algorithm algorithm = Algorithm.LLOYD;
+    private int parallelism = 1;
+    private ForkJoinPool pool;
+    private int maxIterations = 300;
+    private double SSETolerance = 0.0;
+    private double centroidEpsilon = 0.0;
+    private Seeding seeding = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, System.nanoTime());
+    private final List<KMeansListener> listeners = new ArrayList<>();
+
+    public KMeans(int K) {
+        if (K <= 0) {
+            throw new IllegalArgumentException("K must be positive.");
+        }
+
+        this.K = K;
+    }
+
+    public KMeans setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    public KMeans setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /* Runs on a pool shared with other work instead of one of its own, the pool is left
+     * open and the parallelism setting is ignored */
+    public KMeans setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public KMeans setMaxIterations(int maxIterations) {
+        if (maxIterations <= 0) {
+            throw new IllegalArgumentException("Max iterations must be positive.");
+        }
+
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    public KMeans setSSETolerance(double SSETolerance) {
+        if (SSETolerance < 0.0) {
+            throw new IllegalArgumentException("SSE tolerance can not be negative.");
+        }
+
+        this.SSETolerance = SSETolerance;
+        return this;
+    }
+
+    public KMeans setCentroidEpsilon(double centroidEpsilon) {
+        if (centroidEpsilon < 0.0) {
+            throw new IllegalArgumentException("Centroid epsilon can not be negative.");
+        }
+
+        this.centroidEpsilon = centroidEpsilon;
+        return this;
+    }
+
+    public KMeans setSeeding(Seeding seeding) {
+        this.seeding = seeding;
+        return this;
+    }
+
+    public KMeans addListener(KMeansListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /* Selects the initial centroids with the configured seeding and clusters */
+    public KMeansResult run(PointSet points) {
+        ForkJoinPool pool = openPool();
+
+        try {
+            long start = System.nanoTime();
+            double[] centroids = seeding.select(points, K, pool);
+            long elapsed = System.nanoTime() - start;
+            for (KMeansListener listener : listeners) {
+                listener.onSeeded(elapsed);
+            }
+            return iterate(points, centroids, pool);
+        } finally {
+            closePool(pool);
+        }
+    }
+
+    public KMeansResult run(PointSet points, double[] initialCentroids) {
+        if (initialCentroids.length != K * points.getDimensions()) {
+            throw new IllegalArgumentException("Expected " + K + " initial centroids.");
+        }
+
+        ForkJoinPool pool = openPool();
+
+        try {
+            return iterate(points, initialCentroids.clone(), pool);
+        } finally {
+            closePool(pool);
+        }
+    }
+
+    private ForkJoinPool openPool() {
+        if (pool != null) {
+            return pool;
+        }
+        return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    private void closePool(ForkJoinPool opened) {
+        if (opened != null && opened != pool) {
+            opened.shutdown();
+        }
+    }
+
+    private KMeansResult iterate(PointSet points, double[] centroids, ForkJoinPool pool) {
+        int dimensions = points.getDimensions();
+        int[] assignments = new int[points.size()];
+        int chunks = (points.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        HamerlyBounds bounds = algorithm == Algorithm.HAMERLY ? new HamerlyBounds(points.size(), K, dimensions) : null;
+
+        double SSE = Double.POSITIVE_INFINITY;
+        int iteration = 0;
+        boolean converged = false;
+
+        while (!converged && iteration < maxIterations) {
+            long start = System.nanoTime();
+            iteration++;
+
+            int indexMinK = bounds != null ? INDEX_MIN_K : DistanceKernel.get().getIndexMinK();
+            CentroidIndex index = K >= indexMinK ? new CentroidIndex(centroids, dimensions) : null;
+            if (bounds != null) {
+                bounds.prepare(centroids, index);
+            }
+
+            // assign observations to centroids, sum them per cluster and measure the SSE
+            AssignmentTask task = new AssignmentTask(points, centroids, index, assignments, bounds, 0, chunks, pool != null);
+            Partial partial = pool != null ? pool.invoke(task) : task.compute();
+            double newSSE = bounds != null ? partial.decomposedSSE(centroids, dimensions) : partial.SSE;
+
+            // recompute centroids according to new cluster assignments
+            if (bounds != null) {
+                bounds.beforeUpdate(centroids);
+            }
+            double maxShift = partial.updateCentroids(centroids, dimensions);
+            if (bounds != null) {
+                bounds.afterUpdate(centroids);
+            }
+
+            double improvement = (SSE - newSSE) / SSE;
+            if (Double.isNaN(improvement)) {
+                improvement = iteration == 1 ? Double.POSITIVE_INFINITY : 0.0;
+            }
+            SSE = newSSE;
+
+            converged = improvement <= SSETolerance || maxShift <= centroidEpsilon;
+
+            IterationStats stats = new IterationStats(iteration, SSE, improvement, maxShift, partial.evaluations, System.nanoTime() - start);
+            for (KMeansListener listener : listeners) {
+                listener.onIteration(stats);
+            }
+        }
+
+        return new KMeansResult(centroids, assignments, SSE, iteration, converged);
+    }
+
+    /* Index of the closest centroid, the distance to it is left in distance[0] */
+    static int nearestCentroid(PointSet points, int index, double[] centroids, int K, double[] distance) {
+        double minDist = Double.MAX_VALUE;
+        int closest = 0;
+
+        for (int c = 0; c < K; c++) {
+            double dist = points.squaredDistance(index, centroids, c);
+            if (dist < minDist) {
+                minDist = dist;
+                closest = c;
+            }
+        }
+
+        distance[0] = minDist;
+        return closest;
+    }
+
+    public int getK() {
+        return K;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public double getSSETolerance() {
+        return SSETolerance;
+    }
+
+    public double getCentroidEpsilon() {
+        return centroidEpsilon;
+    }
+
+    public Seeding getSeeding() {
+        return seeding;
+    }
+
+    /* Per cluster weighted sums, weights and counts of a range of points, with their
+     * SSE. Hamerly's passes skip distances, so they sum the squared norms instead.
+     * evaluations counts the point to centroid distances computed */
+    static class Partial {
+        final double[] sums;
+        final double[] squares;
+        final double[] weights;
+        final int[] counts;
+        double SSE;
+        long evaluations;
+
+        Partial(int K, int dimensions) {
+            sums = new double[K * dimensions];
+            squares = new double[K];
+            weights = new double[K];
+            counts = new int[K];
+        }
+
+        void merge(Partial other) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += other.sums[i];
+            }
+            for (int c = 0; c < counts.length; c++) {
+                squares[c] += other.squares[c];
+                weights[c] += other.weights[c];
+                counts[c] += other.counts[c];
+            }
+            SSE += other.SSE;
+            evaluations += other.evaluations;
+        }
+
+        /* SSE against the given centroids from the sums, for every cluster
+         * sum w |x - c|^2 = sum w |x|^2 - 2 c . sum w x + (sum w) |c|^2 */
+        double decomposedSSE(double[] centroids, int dimensions) {
+            double SSE = 0.0;
+
+            for (int c = 0; c < counts.length; c++) {
+                if (counts[c] > 0) {
+                    double cross = 0.0;
+                    double norm = 0.0;
+                    for (int d = 0; d < dimensions; d++) {
+                        double value = centroids[c * dimensions + d];
+                        cross += value * sums[c * dimensions + d];
+                        norm += value * value;
+                    }
+                    SSE += Math.max(0.0, squares[c] - 2.0 * cross + weights[c] * norm);
+                }
+            }
+
+            return SSE;
+        }
+
+        /* Every centroid becomes the weighted mean of its points, empty clusters keep
+         * their previous centroid. Returns the largest distance moved by a centroid */
+        double updateCentroids(double[] centroids, int dimensions) {
+            double maxShift = 0.0;
+
+            for (int c = 0; c < counts.length; c++) {
+                if (counts[c] > 0 && weights[c] > 0.0) {
+                    double shift = 0.0;
+                    for (int d = 0; d < dimensions; d++) {
+                        double mean = sums[c * dimensions + d] / weights[c];
+                        double diff = mean - centroids[c * dimensions + d];
+                        shift += diff * diff;
+                        centroids[c * dimensions + d] = mean;
+                    }
+                    // NaN shifts (initial centroids outside the data) count as movement
+                    if (Double.isNaN(shift)) {
+                        shift = Double.POSITIVE_INFINITY;
+                    }
+                    if (shift > maxShift) {
+                        maxShift = shift;
+                    }
+                }
+            }
+
+            return Math.sqrt(maxShift);
+        }
+    }
+
+    static class AssignmentTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final PointSet points;
+        private final double[] centroids;
+        private final CentroidIndex index;
+        private final int[] assignments;
+        private final HamerlyBounds bounds;
+        private final int fromChunk;
+        private final int toChunk;
+        private final boolean fork;
+
+        /* index may be null, the centroids are then scanned */
+        AssignmentTask(PointSet points, double[] centroids, CentroidIndex index, int[] assignments, HamerlyBounds bounds, int fromChunk, int toChunk, boolean fork) {
+            this.points = points;
+            this.centroids = centroids;
+            this.index = index;
+            this.assignments = assignments;
+            this.bounds = bounds;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.fork = fork;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                AssignmentTask left = new AssignmentTask(points, centroids, index, assignments, bounds, fromChunk, middle, fork);
+                AssignmentTask right = new AssignmentTask(points, centroids, index, assignments, bounds, middle, toChunk, fork);
+
+                Partial result;
+                if (fork) {
+                    right.fork();
+                    result = left.compute();
+                    result.merge(right.join());
+                } else {
+                    result = left.compute();
+                    result.merge(right.compute());
+                }
+                return result;
+            }
+
+            int dimensions = points.getDimensions();
+            int K = centroids.length / dimensions;
+            double[] values = points.getValues();
+            double[] weights = points.getWeights();
+            Partial partial = new Partial(K, dimensions);
+            double[] distance = new double[2];
+            long[] evaluations = new long[1];
+
+            int from = fromChunk * CHUNK_SIZE;
+            int to = Math.min(points.size(), from + CHUNK_SIZE);
+
+            // without bounds nor index the whole chunk is scanned at once by the kernel
+            int[] nearest = null;
+            double[] nearestDistances = null;
+            if (bounds == null && index == null) {
+                nearest = new int[to - from];
+                nearestDistances = new double[to - from];
+                DistanceKernel.get().nearest(values, from, to, dimensions, centroids, K, nearest, nearestDistances);
+                evaluations[0] += (long) K * (to - from);
+            }
+
+            for (int i = from; i < to; i++) {
+                int closest;
+                int pointOffset = i * dimensions;
+                double weight = weights == null ? 1.0 : weights[i];
+
+                if (bounds != null) {
+                    closest = bounds.assign(points, i, centroids, index, assignments[i], distance, evaluations);
+                    double square = 0.0;
+                    for (int d = 0; d < dimensions; d++) {
+                        square += values[pointOffset + d] * values[pointOffset + d];
+                    }
+                    partial.squares[closest] += weight * square;
+                } else if (index != null) {
+                    closest = index.nearest(values, pointOffset, distance, evaluations);
+                    partial.SSE += weight * distance[0];
+                } else {
+                    closest = nearest[i - from];
+                    partial.SSE += weight * nearestDistances[i - from];
+                }
+                assignments[i] = closest;
+
+                int offset = closest * dimensions;
+                for (int d = 0; d < dimensions; d++) {
+                    partial.sums[offset + d] += weight * values[pointOffset + d];
+                }
+                partial.weights[closest] += weight;
+                partial.counts[closest]++;
+            }
+
+            partial.evaluations = evaluations[0];
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/* Receives the statistics of every K-Means iteration as soon as it finishes */
+public interface KMeansListener {
+    void onIteration(IterationStats stats);
+
+    /* Called once the initial centroids are selected, when the run seeds them itself */
+    default void onSeeded(long elapsedNanos) {
+    }
+}
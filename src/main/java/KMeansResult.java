@@ -0,0 +1,37 @@
+public class KMeansResult {
+    private final double[] centroids;
+    private final int[] assignments;
+    private final double SSE;
+    private final int iterations;
+    private final boolean converged;
+
+    public KMeansResult(double[] centroids, int[] assignments, double SSE, int iterations, boolean converged) {
+        this.centroids = centroids;
+        this.assignments = assignments;
+        this.SSE = SSE;
+        this.iterations = iterations;
+        this.converged = converged;
+    }
+
+    public double[] getCentroids() {
+        return centroids;
+    }
+
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    /* SSE of the final assignment, measured against the centroids it was made with */
+    public double getSSE() {
+        return SSE;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /* False when the run stopped because it reached the maximum number of iterations */
+    public boolean isConverged() {
+        return converged;
+    }
+}
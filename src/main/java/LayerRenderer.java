@@ -0,0 +1,276 @@
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.util.Arrays;
+
+/* Renders the cluster layers of a ColorHistogram. The cluster of every pixel is worked
+ * out once, together with the bounding box and pixel count of every cluster. A layer is
+ * then one pass over that array writing the pixel colors straight into the layer's int
+ * raster, either full size with everything else transparent or cropped to the box.
+ * Clusters are given per color, or per pixel when the same color may be in several
+ * layers (see Superpixels). */
+public class LayerRenderer {
+    private final ColorHistogram histogram;
+    private final int[] clusters;
+    // position of the color's cluster in clusters, null when clusters are given per pixel
+    private final int[] colorSlots;
+    // position of the pixel's cluster in clusters, -1 for pixels without a color
+    private final int[] pixelSlots;
+    private int[] minX;
+    private int[] minY;
+    private int[] maxX;
+    private int[] maxY;
+    private int[] pixelCounts;
+
+    /* Every color goes to the layer of its nearest centroid, for centroids fit in the
+     * given space on other colors than the histogram's (see CentroidIndex.assign) */
+    public LayerRenderer(ColorHistogram histogram, CentroidIndex centroids, ColorSpace space) {
+        this(histogram, centroids.assign(histogram, space));
+    }
+
+    /* clusterOfColor[c] is the cluster of color c of the histogram */
+    public LayerRenderer(ColorHistogram histogram, int[] clusterOfColor) {
+        if (clusterOfColor.length != histogram.size()) {
+            throw new IllegalArgumentException("Expected a cluster for each of the " + histogram.size() + " colors.");
+        }
+
+        this.histogram = histogram;
+        clusters = Arrays.stream(clusterOfColor).distinct().sorted().toArray();
+
+        colorSlots = new int[clusterOfColor.length];
+        for (int c = 0; c < clusterOfColor.length; c++) {
+            colorSlots[c] = Arrays.binarySearch(clusters, clusterOfColor[c]);
+        }
+
+        int[] labels = histogram.getLabels();
+        pixelSlots = new int[labels.length];
+        for (int p = 0; p < labels.length; p++) {
+            pixelSlots[p] = labels[p] < 0 ? -1 : colorSlots[labels[p]];
+        }
+
+        measure();
+    }
+
+    private LayerRenderer(ColorHistogram histogram, int[] clusters, int[] pixelSlots) {
+        this.histogram = histogram;
+        this.clusters = clusters;
+        this.colorSlots = null;
+        this.pixelSlots = pixelSlots;
+
+        measure();
+    }
+
+    /* clusterOfPixel[y * width + x] is the cluster of that pixel, ignored for pixels
+     * without a color */
+    public static LayerRenderer fromPixelClusters(ColorHistogram histogram, int[] clusterOfPixel) {
+        int[] labels = histogram.getLabels();
+        if (clusterOfPixel.length != labels.length) {
+            throw new IllegalArgumentException("Expected a cluster for each of the " + labels.length + " pixels.");
+        }
+
+        // distinct clusters without boxing every pixel
+        IntIntHashMap seen = new IntIntHashMap(64, -1);
+        int[] distinct = new int[16];
+        int count = 0;
+        for (int p = 0; p < labels.length; p++) {
+            if (labels[p] >= 0 && seen.putIfAbsent(clusterOfPixel[p], count) == -1) {
+                if (count == distinct.length) {
+                    distinct = Arrays.copyOf(distinct, count * 2);
+                }
+                distinct[count++] = clusterOfPixel[p];
+            }
+        }
+        int[] clusters = Arrays.copyOf(distinct, count);
+        Arrays.sort(clusters);
+
+        int[] slotOfEntry = new int[count];
+        for (int s = 0; s < count; s++) {
+            slotOfEntry[seen.get(clusters[s])] = s;
+        }
+        int[] pixelSlots = new int[labels.length];
+        for (int p = 0; p < labels.length; p++) {
+            pixelSlots[p] = labels[p] < 0 ? -1 : slotOfEntry[seen.get(clusterOfPixel[p])];
+        }
+
+        return new LayerRenderer(histogram, clusters, pixelSlots);
+    }
+
+    // bounding box and pixel count of every cluster
+    private void measure() {
+        int width = histogram.getWidth();
+        minX = new int[clusters.length];
+        minY = new int[clusters.length];
+        maxX = new int[clusters.length];
+        maxY = new int[clusters.length];
+        pixelCounts = new int[clusters.length];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        Arrays.fill(maxX, -1);
+        Arrays.fill(maxY, -1);
+
+        for (int y = 0, p = 0; y < histogram.getHeight(); y++) {
+            for (int x = 0; x < width; x++, p++) {
+                int slot = pixelSlots[p];
+                if (slot < 0) {
+                    continue;
+                }
+
+                pixelCounts[slot]++;
+                minX[slot] = Math.min(minX[slot], x);
+                maxX[slot] = Math.max(maxX[slot], x);
+                minY[slot] = Math.min(minY[slot], y);
+                maxY[slot] = Math.max(maxY[slot], y);
+            }
+        }
+    }
+
+    private int slot(int cluster) {
+        int slot = Arrays.binarySearch(clusters, cluster);
+        if (slot < 0) {
+            throw new IllegalArgumentException("No cluster " + cluster + ".");
+        }
+        return slot;
+    }
+
+    /* Cluster numbers in ascending order */
+    public int[] getClusters() {
+        return clusters.clone();
+    }
+
+    /* Smallest rectangle holding every pixel of the cluster, empty for a cluster without pixels */
+    public Rectangle getBounds(int cluster) {
+        int slot = slot(cluster);
+        if (pixelCounts[slot] == 0) {
+            return new Rectangle();
+        }
+        return new Rectangle(minX[slot], minY[slot], maxX[slot] - minX[slot] + 1, maxY[slot] - minY[slot] + 1);
+    }
+
+    public int getPixelCount(int cluster) {
+        return pixelCounts[slot(cluster)];
+    }
+
+    public int getWidth() {
+        return histogram.getWidth();
+    }
+
+    public int getHeight() {
+        return histogram.getHeight();
+    }
+
+    /* The pixels of one cluster, everything else transparent */
+    public BufferedImage renderLayer(int cluster) {
+        return render(slot(cluster), new Rectangle(0, 0, histogram.getWidth(), histogram.getHeight()));
+    }
+
+    /* The layer cut down to getBounds(cluster), its top left pixel is at the box's x and y */
+    public BufferedImage renderCroppedLayer(int cluster) {
+        Rectangle bounds = getBounds(cluster);
+        if (bounds.isEmpty()) {
+            bounds.setSize(1, 1);
+        }
+        return render(slot(cluster), bounds);
+    }
+
+    private BufferedImage render(int slot, Rectangle area) {
+        BufferedImage image = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+        int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] labels = histogram.getLabels();
+        int width = histogram.getWidth();
+
+        for (int y = 0; y < area.height; y++) {
+            int from = (area.y + y) * width + area.x;
+            int to = y * area.width;
+            for (int x = 0; x < area.width; x++) {
+                if (pixelSlots[from + x] == slot) {
+                    raster[to + x] = histogram.getColor(labels[from + x]);
+                }
+            }
+        }
+
+        return image;
+    }
+
+    /* Every layer on top of each other, which is the original image */
+    public BufferedImage renderFused() {
+        BufferedImage image = new BufferedImage(histogram.getWidth(), histogram.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] labels = histogram.getLabels();
+
+        for (int p = 0; p < raster.length; p++) {
+            if (labels[p] >= 0) {
+                raster[p] = histogram.getColor(labels[p]);
+            }
+        }
+
+        return image;
+    }
+
+    /* One sample per pixel instead of one image per layer: 0 for pixels without a color,
+     * i + 1 for pixels of getClusters()[i]. Up to 255 clusters this is an 8 bit indexed
+     * image whose palette holds the mean color of every cluster, above that a 16 bit
+     * gray image of the raw indices. */
+    public BufferedImage renderLabelMap() {
+        int width = histogram.getWidth();
+        int height = histogram.getHeight();
+
+        if (clusters.length > 0xFFFF) {
+            throw new IllegalStateException("Too many clusters for a label map: " + clusters.length + ".");
+        }
+
+        if (clusters.length > 255) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+            short[] raster = ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+            for (int p = 0; p < raster.length; p++) {
+                raster[p] = (short) (pixelSlots[p] + 1);
+            }
+            return image;
+        }
+
+        int[] palette = new int[clusters.length + 1];
+        System.arraycopy(meanColors(), 0, palette, 1, clusters.length);
+        IndexColorModel colorModel = new IndexColorModel(8, palette.length, palette, 0, true, 0, DataBuffer.TYPE_BYTE);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        byte[] raster = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int p = 0; p < raster.length; p++) {
+            raster[p] = (byte) (pixelSlots[p] + 1);
+        }
+        return image;
+    }
+
+    /* Pixel weighted mean ARGB color of every cluster, in getClusters() order */
+    public int[] meanColors() {
+        double[] sums = new double[clusters.length * 4];
+
+        if (colorSlots != null) {
+            for (int c = 0; c < histogram.size(); c++) {
+                addColor(sums, colorSlots[c] * 4, histogram.getColor(c), histogram.getCount(c));
+            }
+        } else {
+            int[] labels = histogram.getLabels();
+            for (int p = 0; p < labels.length; p++) {
+                if (pixelSlots[p] >= 0) {
+                    addColor(sums, pixelSlots[p] * 4, histogram.getColor(labels[p]), 1);
+                }
+            }
+        }
+
+        int[] colors = new int[clusters.length];
+        for (int s = 0; s < clusters.length; s++) {
+            int count = Math.max(1, pixelCounts[s]);
+            int a = (int) Math.round(sums[s * 4] / count);
+            int r = (int) Math.round(sums[s * 4 + 1] / count);
+            int g = (int) Math.round(sums[s * 4 + 2] / count);
+            int b = (int) Math.round(sums[s * 4 + 3] / count);
+            colors[s] = a << 24 | r << 16 | g << 8 | b;
+        }
+        return colors;
+    }
+
+    private static void addColor(double[] sums, int offset, int argb, int count) {
+        sums[offset] += (double) (argb >>> 24) * count;
+        sums[offset + 1] += (double) ((argb >> 16) & 0xFF) * count;
+        sums[offset + 2] += (double) ((argb >> 8) & 0xFF) * count;
+        sums[offset + 3] += (double) (argb & 0xFF) * count;
+    }
+}
@@ -0,0 +1,186 @@
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Writes the layers of a LayerRenderer as colorImage<N>.png plus colorImageFused.png.
+ * FULL layers are the size of the image, CROPPED layers only cover the bounding box of
+ * their cluster and LABEL_MAP replaces the layers by a single labels.png holding the
+ * label of every pixel. The last two modes also write layers.csv, giving for every
+ * cluster its label, its file, where the file goes in the image and its pixel count.
+ * Every layer is rendered and encoded by one task. A layer is a full size image, so
+ * the layers are dealt out to maxBuffers lanes and each lane renders its layers one
+ * after the other: at most maxBuffers layers are alive at once whatever the number of
+ * clusters or threads, and no thread ever blocks waiting for a buffer. */
+public class LayerWriter {
+    public enum Mode {FULL, CROPPED, LABEL_MAP}
+
+    static final String MANIFEST = "layers.csv";
+    static final String LABEL_MAP = "labels.png";
+    static final String FUSED = "colorImageFused.png";
+
+    private final File directory;
+    private Mode mode = Mode.FULL;
+    private int threads = 1;
+    private int maxBuffers = 2;
+    // layers are mostly transparent runs, filtering them only costs time
+    private PngEncoder encoder = new PngEncoder().setFilter(PngEncoder.Filter.NONE);
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public LayerWriter(File directory) {
+        this.directory = directory;
+    }
+
+    /* Threads of the pool write creates, writeAsync runs on the given executor instead */
+    public LayerWriter setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed.");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /* Maximum number of layer images alive at once */
+    public LayerWriter setMaxBuffers(int maxBuffers) {
+        if (maxBuffers < 1) {
+            throw new IllegalArgumentException("At least one buffer is needed.");
+        }
+        this.maxBuffers = maxBuffers;
+        return this;
+    }
+
+    public LayerWriter setEncoder(PngEncoder encoder) {
+        this.encoder = encoder;
+        return this;
+    }
+
+    public LayerWriter setMode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public void write(LayerRenderer renderer) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            writeAsync(renderer, executor).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing layers.", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* Writes the layers with tasks on the executor, the future completes once every file
+     * is written, exceptionally with an UncheckedIOException when one could not be */
+    public CompletableFuture<Void> writeAsync(LayerRenderer renderer, Executor executor) {
+        if (mode == Mode.LABEL_MAP) {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    File labelMap = new File(directory, LABEL_MAP);
+                    if (!ImageIO.write(renderer.renderLabelMap(), "png", labelMap)) {
+                        throw new IOException("No PNG writer for " + labelMap + ".");
+                    }
+                    bytesWritten.addAndGet(labelMap.length());
+                    writeManifest(renderer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+
+        List<Callable<BufferedImage>> renders = new ArrayList<>();
+        List<String> fileNames = new ArrayList<>();
+        for (int cluster : renderer.getClusters()) {
+            renders.add(mode == Mode.CROPPED ? () -> renderer.renderCroppedLayer(cluster) : () -> renderer.renderLayer(cluster));
+            fileNames.add(layerFileName(cluster));
+        }
+        renders.add(renderer::renderFused);
+        fileNames.add(FUSED);
+
+        CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(maxBuffers, renders.size())];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < renders.size(); i += lanes.length) {
+                Callable<BufferedImage> render = renders.get(i);
+                File file = new File(directory, fileNames.get(i));
+                chain = chain.thenRunAsync(() -> encode(render, file), executor);
+            }
+            lanes[lane] = chain;
+        }
+
+        CompletableFuture<Void> layers = CompletableFuture.allOf(lanes);
+        if (mode != Mode.CROPPED) {
+            return layers;
+        }
+        return layers.thenRunAsync(() -> {
+            try {
+                writeManifest(renderer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private void encode(Callable<BufferedImage> render, File file) {
+        try {
+            encoder.write(render.call(), file);
+            bytesWritten.addAndGet(file.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /* Size of the images written so far by this writer, manifests aside */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /* The IOException behind a failed writeAsync */
+    static IOException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof UncheckedIOException) {
+            return ((UncheckedIOException) cause).getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Could not write layers.", cause);
+    }
+
+    static String layerFileName(int cluster) {
+        return "colorImage" + cluster + ".png";
+    }
+
+    private void writeManifest(LayerRenderer renderer) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(new File(directory, MANIFEST)))) {
+            out.println("cluster,label,file,x,y,width,height,pixels");
+
+            int[] clusters = renderer.getClusters();
+            for (int i = 0; i < clusters.length; i++) {
+                Rectangle bounds = mode == Mode.CROPPED
+                        ? renderer.getBounds(clusters[i])
+                        : new Rectangle(0, 0, renderer.getWidth(), renderer.getHeight());
+                String file = mode == Mode.LABEL_MAP ? LABEL_MAP : layerFileName(clusters[i]);
+
+                out.println(clusters[i] + "," + (i + 1) + "," + file + "," + bounds.x + "," + bounds.y + ","
+                        + bounds.width + "," + bounds.height + "," + renderer.getPixelCount(clusters[i]));
+            }
+
+            if (out.checkError()) {
+                throw new IOException("Could not write " + MANIFEST + ".");
+            }
+        }
+    }
+}
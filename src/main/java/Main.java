@@ -1,147 +1,76 @@
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 
 public class Main {
-    static final Double PRECISION = 0.0;
+    // images with more colors are clustered on a palette of at most that many colors
+    static final int PALETTE_COLORS = 32768;
+    // colors are clustered by how different they look rather than by raw channel values
+    static final ColorSpace COLOR_SPACE = ColorSpace.OKLAB;
+    // -Dsplitter.verbose=true prints the statistics of every K-Means iteration
+    static final boolean VERBOSE = Boolean.getBoolean("splitter.verbose");
 
-    static HashMap<Color, List<int[]>> trimColors(HashMap<Color, List<int[]>> color, int imageWidth, int imageHeight, int colorPixelLimit, int colorClusterDisparity) {
-        // Color trimming
-        HashMap<Color, List<int[]>> colorAuxMap = new HashMap<>();
-        Color colorCluster = new ArrayList<>(color.keySet()).get(0);
-        int rgbaLastRedValue = 0;
-        int rgbaLastGreenValue = 0;
-        int rgbaLastBlueValue = 0;
-
-        for (Color colorList : color.keySet()) {
-            int rgbaCurrentRedValue = colorList.getRed();
-            int rgbaCurrentGreenValue = colorList.getGreen();
-            int rgbaCurrentBlueValue = colorList.getBlue();
-
-            if (color.get(colorList).size() <= colorPixelLimit && (Math.abs((rgbaLastRedValue - rgbaCurrentRedValue)) <= colorClusterDisparity || Math.abs((rgbaLastGreenValue - rgbaCurrentGreenValue)) <= colorClusterDisparity || Math.abs((rgbaLastBlueValue - rgbaCurrentBlueValue)) <= colorClusterDisparity)) {
-                if (!colorAuxMap.containsKey(colorCluster)) {
-                    colorAuxMap.put(colorCluster, new ArrayList<>());
-                }
-
-                colorAuxMap.get(colorCluster).addAll(color.get(colorList));
-            } else {
-                colorCluster = colorList;
-
-                if (!colorAuxMap.containsKey(colorCluster)) {
-                    colorAuxMap.put(colorCluster, new ArrayList<>());
-                }
-
-                colorAuxMap.get(colorCluster).addAll(color.get(colorList));
-            }
-
-            rgbaLastRedValue = rgbaCurrentRedValue;
-            rgbaLastGreenValue = rgbaCurrentGreenValue;
-            rgbaLastBlueValue = rgbaCurrentBlueValue;
-        }
-
-        return colorAuxMap;
+    /* K-Means itself, it takes a dataset and a number K and adds class numbers
+     * to records in the dataset */
+    static void kmeans(DataSet data, int K) {
+        kmeans(data, K, 1);
     }
 
-    static HashMap<Color, List<int[]>> trimColorsGeneric(HashMap<Color, List<int[]>> color, int imageWidth, int imageHeight, int colorPixelLimit, int colorClusterDisparity) {
-        // Color trimming
-        HashMap<Color, List<int[]>> colorAuxMap = new HashMap<>();
-        Color colorCluster = new ArrayList<>(color.keySet()).get(0);
-        int rgbaLastValue = 0;
-
-        for (Color colorList : color.keySet()) {
-            int rgbaCurrentValue = colorList.getRed() + colorList.getGreen() + colorList.getBlue();
-
-            if (color.get(colorList).size() <= colorPixelLimit && Math.abs((rgbaLastValue - rgbaCurrentValue)) <= colorClusterDisparity) {
-                if (!colorAuxMap.containsKey(colorCluster)) {
-                    colorAuxMap.put(colorCluster, new ArrayList<>());
-                }
-
-                colorAuxMap.get(colorCluster).addAll(color.get(colorList));
-            } else {
-                colorCluster = colorList;
+    /* Same as above, spreading the assignment and centroid update steps over the
+     * given number of threads. The result does not depend on the thread count */
+    static void kmeans(DataSet data, int K, int threads) {
+        kmeans(data, K, threads, null);
+    }
 
-                if (!colorAuxMap.containsKey(colorCluster)) {
-                    colorAuxMap.put(colorCluster, new ArrayList<>());
-                }
+    /* Same as above starting from the centroids of a previous run (of a similar image,
+     * the previous frame of a video...) instead of seeding, null seeds with k-means++.
+     * Returns the result so its centroids can start the next run */
+    static KMeansResult kmeans(DataSet data, int K, int threads, double[] previousCentroids) {
+        return kmeans(data, K, threads, previousCentroids, new KMeansListener[0]);
+    }
 
-                colorAuxMap.get(colorCluster).addAll(color.get(colorList));
-            }
+    /* Same as above, reporting seeding and every iteration to the listeners (JobMetrics,
+     * the verbose printout...) */
+    static KMeansResult kmeans(DataSet data, int K, int threads, double[] previousCentroids, KMeansListener... listeners) {
+        // the engine works on the data set's own storage, shared by the PointSet
+        PointSet points = data.toPointSet();
 
-            rgbaLastValue = rgbaCurrentValue;
+        KMeans kmeans = new KMeans(K).setParallelism(threads);
+        for (KMeansListener listener : listeners) {
+            kmeans.addListener(listener);
         }
 
-        return colorAuxMap;
-    }
+        // K initial centroids are selected by the engine with k-means++ unless given
+        KMeansResult result = previousCentroids == null ? kmeans.run(points) : kmeans.run(points, previousCentroids);
 
-    /* K-Means++ implementation, initializes K centroids from data */
-    static LinkedList<HashMap<String, Double>> kmeanspp(DataSet data, int K) {
-        LinkedList<HashMap<String, Double>> centroids = new LinkedList<>();
+        data.setClusterAssignments(result.getAssignments());
 
-        centroids.add(data.randomFromDataSet());
+        return result;
+    }
 
-        for (int i = 1; i < K; i++) {
-            centroids.add(data.calculateWeighedCentroid());
+    // the metrics, and the printout of every iteration when verbose
+    private static KMeansListener[] listeners(JobMetrics metrics) {
+        if (!VERBOSE) {
+            return new KMeansListener[]{metrics};
         }
-
-        return centroids;
+        return new KMeansListener[]{metrics, stats -> System.out.println("Iteration: " + stats)};
     }
 
-    /* K-Means itself, it takes a dataset and a number K and adds class numbers
-     * to records in the dataset */
-    static void kmeans(DataSet data, int K) {
-        // select K initial centroids
-        LinkedList<HashMap<String, Double>> centroids = kmeanspp(data, K);
-
-        // initialize Sum of Squared Errors to max, we'll lower it at each iteration
-        Double SSE = Double.MAX_VALUE;
-
-        // breaking iteration counter
-        int iteration = 0;
-
-        while (true) {
-
-            // assign observations to centroids
-            var records = data.getRecords();
-
-            // for each record
-            for (var record : records) {
-                Double minDist = Double.MAX_VALUE;
-                // find the centroid at a minimum distance from it and add the record to its cluster
-                for (int i = 0; i < centroids.size(); i++) {
-                    Double dist = DataSet.euclideanDistance(centroids.get(i), record.getRecord());
-                    if (dist < minDist) {
-                        minDist = dist;
-                        record.setClusterNo(i);
-                    }
-                }
-
-            }
-
-            // recompute centroids according to new cluster assignments
-            centroids = data.recomputeCentroids(K);
-
-            // exit condition, SSE changed less than PRECISION parameter
-            Double newSSE = data.calculateTotalSSE(centroids);
-
-            if (SSE - newSSE <= PRECISION) {
-                break;
-            }
-            SSE = newSSE;
-
-            System.out.println("Finnish an iteration. Iteration " + iteration++ + ".");
+    private static void printSummary(KMeansResult result) {
+        if (VERBOSE) {
+            System.out.println("Clustered in " + result.getIterations() + " iterations, SSE " + result.getSSE() + ".");
         }
     }
 
     public static void main(String[] args) {
+        // with arguments it runs headless over many images, see BatchProcessor
+        if (args.length > 0) {
+            BatchProcessor.main(args);
+            return;
+        }
+
         File file;
-        HashMap<Color, List<int[]>> colorMap = new HashMap<>();
-        int imageWidth, imageHeight;
         try {
             //file = new File("src/main/resources/default_meme.bmp");
             file = new File("src/main/resources/pine_tree.png");
@@ -149,115 +78,65 @@ public class Main {
             //file = new File("src/main/resources/mosaic.png");
             //file = new File("src/main/resources/tree_sample.png");
             //file = new File("src/main/resources/digital_zone.png");
-            BufferedImage image = ImageIO.read(file);
-            imageWidth = image.getWidth();
-            imageHeight = image.getHeight();
+            // time, iterations, distances and bytes of every stage, see JobMetrics
+            JobMetrics metrics = new JobMetrics(file.getPath());
+            BufferedImage image = metrics.time("decode", () -> ImageLoader.read(file));
 
-            for (int i = 0; image.getWidth() > i; i++) {
-                for (int j = 0; image.getHeight() > j; j++) {
-                    Color pixel = new Color(image.getRGB(i, j));
-                    if (!colorMap.containsKey(pixel)) {
-                        colorMap.put(pixel, new ArrayList<>());
-                    }
-                    colorMap.get(pixel).add(new int[]{i, j});
-                }
-            }
+            // packed ARGB color index of the image, one int per pixel
+            ColorMap colorMap = metrics.time("histogram", () -> new ColorMap(image));
+            ColorHistogram histogram = colorMap.getHistogram();
+            metrics.describe(histogram.getWidth(), histogram.getHeight(), histogram.size());
 
             StringBuilder str = new StringBuilder();
 
-            for (Color color : colorMap.keySet()) {
+            for (int c = 0; c < histogram.size(); c++) {
+                Color color = new Color(histogram.getColor(c), true);
                 str.append("\n").append("-----------------------------");
                 str.append("\n").append("Red:\t").append(color.getRed());
                 str.append("\n").append("Green:\t").append(color.getGreen());
                 str.append("\n").append("Blue:\t").append(color.getBlue());
                 str.append("\n").append("Alpha:\t").append(color.getAlpha());
-                str.append("\n").append("This color has ").append(colorMap.get(color).size()).append(" pixel cells of this color.");
+                str.append("\n").append("This color has ").append(histogram.getCount(c)).append(" pixel cells of this color.");
             }
 
             str.append("\n").append("||||||||||||||||||||||||||");
-            str.append("\n").append("Total of different colors:\t").append(colorMap.keySet().size()).append(".").append("\n");
+            str.append("\n").append("Total of different colors:\t").append(histogram.size()).append(".").append("\n");
 
             System.out.println(str);
 
-            // Color trimming
-            HashMap<Color, List<int[]>> colorAuxMap;
-            int colorPixelLimit = (int) Math.floor(Math.sqrt(Math.floor(Math.sqrt(imageWidth * imageHeight))));
-            int colorClusterDisparity = 20;
-
-            colorAuxMap = trimColorsGeneric(colorMap, imageWidth, imageHeight, colorPixelLimit, colorClusterDisparity);
-
-            System.out.println("\nTotal of different colors after treatment: " + colorAuxMap.keySet().size() + "\n");
-
-            for (int i = 0; i < 2000 && colorAuxMap.size() > 8000; i++) {
-                colorAuxMap = trimColorsGeneric(colorMap, imageWidth, imageHeight, colorPixelLimit, colorClusterDisparity);
-            }
-
-            System.out.println("\nTotal of different colors after treatment: " + colorAuxMap.keySet().size() + "\n");
-
             // This K-Means is this algorithm here - https://github.com/Mentathiel/KMeansJava
 
-            // Read data
-            DataSet data = new DataSet(colorAuxMap);
-
-            // Clusters
-            kmeans(data, 20);
-
-            // output into color clusters
-            HashMap<Integer, List<Color>> imageColorMapping = data.createOutputColorMap(colorAuxMap);
-
-            System.out.println("\nTotal of different image parts that will be created: " + imageColorMapping.keySet().size() + "\n");
-
-            for (int colorSection : imageColorMapping.keySet()) {
-                // Constructs a BufferedImage of one of the predefined image types.
-                BufferedImage imageColorPart = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
-
-                // Create a graphics which can be used to draw into the buffered image
-                Graphics2D g2d = imageColorPart.createGraphics();
-
-                g2d.setComposite(AlphaComposite.Clear);
-                g2d.fillRect(0, 0, imageWidth, imageHeight);
-
-                for (Color colorList : imageColorMapping.get(colorSection)) {
-                    for (int[] pixelLocation : colorAuxMap.get(colorList)) {
-                        g2d.setComposite(AlphaComposite.Src);
-                        g2d.setColor(colorList);
-                        g2d.fillRect(pixelLocation[0], pixelLocation[1], 1, 1);
-                    }
-                }
-
-                // Disposes of this graphics context and releases any system resources that it is using.
-                g2d.dispose();
-
-                // Save as PNG
-                File imagePart = new File("src/splitImages/colorImage" + colorSection + ".png");
-                ImageIO.write(imageColorPart, "png", imagePart);
-            }
-
-            // Constructs a BufferedImage of one of the predefined image types.
-            BufferedImage imageColorPart = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
-
-            // Create a graphics which can be used to draw into the buffered image
-            Graphics2D g2d = imageColorPart.createGraphics();
-
-            g2d.setComposite(AlphaComposite.Clear);
-            g2d.fillRect(0, 0, imageWidth, imageHeight);
-
-            for (int colorSection : imageColorMapping.keySet()) {
-                for (Color colorList : imageColorMapping.get(colorSection)) {
-                    for (int[] pixelLocation : colorAuxMap.get(colorList)) {
-                        g2d.setComposite(AlphaComposite.Src);
-                        g2d.setColor(colorList);
-                        g2d.fillRect(pixelLocation[0], pixelLocation[1], 1, 1);
-                    }
-                }
+            // Read data, every color weighs the number of pixels it covers so the whole
+            // histogram is clustered without trimming it first
+            DataSet data = new DataSet(histogram, COLOR_SPACE);
+
+            // Clusters, on a reduced palette when there are too many colors, every image
+            // color then goes to the cluster of its nearest centroid
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (histogram.size() > PALETTE_COLORS) {
+                PaletteReducer.Reduction palette = metrics.time("palette", () -> new PaletteReducer(PALETTE_COLORS).reduce(histogram));
+                System.out.println("Palette reduced to " + palette.size() + " colors, " + palette.getBits() + " bits per channel.");
+
+                KMeansResult result = metrics.time("cluster", () -> {
+                    KMeansResult reduced = kmeans(new DataSet(palette.toColorCounts(histogram), COLOR_SPACE), 20, threads, null, listeners(metrics));
+                    data.setClusterAssignments(new CentroidIndex(reduced.getCentroids(), data.toPointSet().getDimensions()).assign(histogram, COLOR_SPACE));
+                    return reduced;
+                });
+                printSummary(result);
+            } else {
+                printSummary(metrics.time("cluster", () -> kmeans(data, 20, threads, null, listeners(metrics))));
             }
 
-            // Disposes of this graphics context and releases any system resources that it is using.
-            g2d.dispose();
-
-            // Save as PNG
-            File imagePart = new File("src/splitImages/colorImageFused.png");
-            ImageIO.write(imageColorPart, "png", imagePart);
+            // output into color clusters
+            File output = new File("src/splitImages");
+            LayerWriter writer = new LayerWriter(output).setThreads(threads).setMaxBuffers(threads + 1);
+            metrics.time("output", () -> {
+                colorMap.toImages(data, writer);
+                return null;
+            });
+            metrics.addBytesWritten(writer.getBytesWritten());
+            metrics.finish();
+            metrics.writeJson(new File(output, BatchProcessor.METRICS).toPath());
 
             TrayIconDemo td = new TrayIconDemo("src/main/resources/warning_icon.png", "Color Splitter has finnish!", "Check it out!");
             td.displayTray();
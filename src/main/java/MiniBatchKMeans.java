@@ -0,0 +1,158 @@
+import java.util.Random;
+
+/* Mini-batch K-Means (Sculley, "Web-scale k-means clustering"). Every step draws a
+ * fixed size batch from a PointSampler, assigns it to the current centroids and moves
+ * each centroid towards its points with a per centroid learning rate of
+ * 1 / (points it has seen so far). Memory only depends on K and the batch size, never
+ * on the size of the image (or images) being sampled.
+ * The state is kept between calls to partialFit, so a stream of frames can be fed
+ * one sampler at a time. Centroids are seeded with k-means++ over the first batch. */
+public class MiniBatchKMeans {
+    private final int K;
+    private int batchSize = 1024;
+    private int maxIterations = 100;
+    private double centroidEpsilon = 0.0;
+    private final Random random;
+
+    private double[] centroids;
+    private long[] seen;
+    private double[] batch;
+    private int iterations;
+
+    public MiniBatchKMeans(int K, long seed) {
+        if (K <= 0) {
+            throw new IllegalArgumentException("K must be positive.");
+        }
+
+        this.K = K;
+        this.random = new Random(seed);
+    }
+
+    public MiniBatchKMeans setBatchSize(int batchSize) {
+        if (batchSize < K) {
+            throw new IllegalArgumentException("The batch size can not be smaller than K.");
+        }
+
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /* Number of batches drawn by every call to partialFit */
+    public MiniBatchKMeans setMaxIterations(int maxIterations) {
+        if (maxIterations <= 0) {
+            throw new IllegalArgumentException("Max iterations must be positive.");
+        }
+
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /* partialFit stops early when no centroid moves more than this during a batch */
+    public MiniBatchKMeans setCentroidEpsilon(double centroidEpsilon) {
+        if (centroidEpsilon < 0.0) {
+            throw new IllegalArgumentException("Centroid epsilon can not be negative.");
+        }
+
+        this.centroidEpsilon = centroidEpsilon;
+        return this;
+    }
+
+    /* Draws up to maxIterations batches from the sampler and returns the number of
+     * batches used */
+    public int partialFit(PointSampler sampler) {
+        String[] attrNames = sampler.getAttrNames();
+        int dimensions = attrNames.length;
+
+        if (batchSize < K) {
+            throw new IllegalArgumentException("The batch size can not be smaller than K.");
+        }
+
+        if (batch == null || batch.length != batchSize * dimensions) {
+            batch = new double[batchSize * dimensions];
+        }
+        PointSet points = new PointSet(attrNames, batch);
+
+        if (centroids == null) {
+            sampler.sample(batch, batchSize, random);
+            centroids = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, random.nextLong()).select(points, K, null);
+            seen = new long[K];
+        } else if (centroids.length != K * dimensions) {
+            throw new IllegalArgumentException("The sampler does not match the dimensions of the centroids.");
+        }
+
+        int[] assignments = new int[batchSize];
+        double[] distance = new double[1];
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            sampler.sample(batch, batchSize, random);
+            iterations++;
+
+            // assignments are all done against the centroids of the previous batch
+            CentroidIndex index = K >= KMeans.INDEX_MIN_K ? new CentroidIndex(centroids, dimensions) : null;
+            for (int i = 0; i < batchSize; i++) {
+                assignments[i] = index != null ? index.nearest(batch, i * dimensions, distance) : KMeans.nearestCentroid(points, i, centroids, K, distance);
+            }
+
+            double maxShift = 0.0;
+            double[] previous = centroidEpsilon > 0.0 ? centroids.clone() : null;
+
+            for (int i = 0; i < batchSize; i++) {
+                int c = assignments[i];
+                double eta = 1.0 / ++seen[c];
+                for (int d = 0; d < dimensions; d++) {
+                    int offset = c * dimensions + d;
+                    centroids[offset] += eta * (batch[i * dimensions + d] - centroids[offset]);
+                }
+            }
+
+            if (previous != null) {
+                for (int c = 0; c < K; c++) {
+                    maxShift = Math.max(maxShift, PointSet.squaredDistance(previous, c, centroids, c, dimensions));
+                }
+
+                if (Math.sqrt(maxShift) <= centroidEpsilon) {
+                    return iteration + 1;
+                }
+            }
+        }
+
+        return maxIterations;
+    }
+
+    /* Nearest centroid of every point, to label the full data once the centroids are fit */
+    public int[] predict(PointSet points) {
+        if (centroids == null) {
+            throw new IllegalStateException("partialFit has not been called yet.");
+        }
+
+        int[] assignments = new int[points.size()];
+        double[] distance = new double[1];
+        CentroidIndex index = K >= KMeans.INDEX_MIN_K ? new CentroidIndex(centroids, points.getDimensions()) : null;
+        for (int i = 0; i < points.size(); i++) {
+            assignments[i] = index != null ? index.nearest(points.getValues(), i * points.getDimensions(), distance) : KMeans.nearestCentroid(points, i, centroids, K, distance);
+        }
+        return assignments;
+    }
+
+    /* Centroids in the interleaved layout, null before the first partialFit */
+    public double[] getCentroids() {
+        return centroids == null ? null : centroids.clone();
+    }
+
+    /* Total number of batches drawn since the creation of this instance */
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getK() {
+        return K;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+}
@@ -0,0 +1,179 @@
+/* Deterministic pre-quantization of a ColorHistogram. Colors are bucketed on the high
+ * bits of each channel (alpha included) and every bucket is represented by the pixel
+ * weighted mean of its colors. reduce picks the most bits per channel that brings the
+ * palette down to the target count: every try is one pass over the distinct colors,
+ * not over the pixels, and 8 bits (nothing to do) is known without trying.
+ * Buckets are numbered in the order their first color appears in the histogram, so the
+ * result only depends on the image. */
+public class PaletteReducer {
+    private final int targetColors;
+
+    public PaletteReducer(int targetColors) {
+        if (targetColors < 1) {
+            throw new IllegalArgumentException("The palette needs at least one color.");
+        }
+
+        this.targetColors = targetColors;
+    }
+
+    /* Buckets of the most bits per channel giving at most targetColors colors, or of
+     * 1 bit per channel (at most 16 colors) when no finer bucketing fits */
+    public Reduction reduce(ColorHistogram histogram) {
+        if (histogram.size() <= targetColors) {
+            return quantize(histogram, 8);
+        }
+
+        for (int bits = 7; bits > 1; bits--) {
+            if (countBuckets(histogram, bits) <= targetColors) {
+                return quantize(histogram, bits);
+            }
+        }
+        return quantize(histogram, 1);
+    }
+
+    private static int mask(int bits) {
+        int channel = (0xFF << (8 - bits)) & 0xFF;
+        return channel << 24 | channel << 16 | channel << 8 | channel;
+    }
+
+    private static int countBuckets(ColorHistogram histogram, int bits) {
+        int mask = mask(bits);
+        IntIntHashMap buckets = new IntIntHashMap(histogram.size(), -1);
+        for (int c = 0; c < histogram.size(); c++) {
+            buckets.putIfAbsent(histogram.getColor(c) & mask, 0);
+        }
+        return buckets.size();
+    }
+
+    /* Buckets keeping the given number of high bits per channel, 1 to 8 */
+    public static Reduction quantize(ColorHistogram histogram, int bits) {
+        if (bits < 1 || bits > 8) {
+            throw new IllegalArgumentException("Bits per channel must be between 1 and 8.");
+        }
+
+        int mask = mask(bits);
+        IntIntHashMap buckets = new IntIntHashMap(histogram.size(), -1);
+        int[] bucketOfColor = new int[histogram.size()];
+        int size = 0;
+
+        for (int c = 0; c < histogram.size(); c++) {
+            int bucket = buckets.putIfAbsent(histogram.getColor(c) & mask, size);
+            bucketOfColor[c] = bucket == -1 ? size++ : bucket;
+        }
+
+        // pixel weighted mean of every bucket, it stays inside the bucket so bucket colors are distinct
+        long[] sums = new long[size * 4];
+        int[] counts = new int[size];
+        for (int c = 0; c < histogram.size(); c++) {
+            int argb = histogram.getColor(c);
+            long count = histogram.getCount(c);
+            int offset = bucketOfColor[c] * 4;
+            sums[offset] += (argb >>> 24) * count;
+            sums[offset + 1] += ((argb >> 16) & 0xFF) * count;
+            sums[offset + 2] += ((argb >> 8) & 0xFF) * count;
+            sums[offset + 3] += (argb & 0xFF) * count;
+            counts[bucketOfColor[c]] += histogram.getCount(c);
+        }
+
+        int[] colors = new int[size];
+        for (int b = 0; b < size; b++) {
+            if (counts[b] == 0) {
+                // only colors without pixels, any member is as good as the mean
+                colors[b] = firstMember(histogram, bucketOfColor, b);
+                continue;
+            }
+            int color = 0;
+            for (int channel = 0; channel < 4; channel++) {
+                color = color << 8 | (int) ((sums[b * 4 + channel] + counts[b] / 2) / counts[b]);
+            }
+            colors[b] = color;
+        }
+
+        return new Reduction(bits, bucketOfColor, colors, counts);
+    }
+
+    private static int firstMember(ColorHistogram histogram, int[] bucketOfColor, int bucket) {
+        for (int c = 0; c < bucketOfColor.length; c++) {
+            if (bucketOfColor[c] == bucket) {
+                return histogram.getColor(c);
+            }
+        }
+        throw new IllegalStateException("Empty bucket " + bucket + ".");
+    }
+
+    public int getTargetColors() {
+        return targetColors;
+    }
+
+    /* The reduced palette and the bucket of every color of the source histogram */
+    public static class Reduction {
+        private final int bits;
+        private final int[] bucketOfColor;
+        private final int[] colors;
+        private final int[] counts;
+
+        Reduction(int bits, int[] bucketOfColor, int[] colors, int[] counts) {
+            this.bits = bits;
+            this.bucketOfColor = bucketOfColor;
+            this.colors = colors;
+            this.counts = counts;
+        }
+
+        /* Bits kept per channel */
+        public int getBits() {
+            return bits;
+        }
+
+        /* Number of buckets */
+        public int size() {
+            return colors.length;
+        }
+
+        public int getColor(int bucket) {
+            return colors[bucket];
+        }
+
+        public int getCount(int bucket) {
+            return counts[bucket];
+        }
+
+        /* Bucket of color c of the source histogram */
+        public int bucketOf(int colorIndex) {
+            return bucketOfColor[colorIndex];
+        }
+
+        /* The source image with every pixel in its bucket's color, color i of the
+         * result being bucket i */
+        public ColorHistogram toHistogram(ColorHistogram source) {
+            int[] labels = source.getLabels();
+            // a histogram without labels gives one without labels
+            int[] bucketLabels = null;
+            if (labels != null) {
+                bucketLabels = new int[labels.length];
+                for (int p = 0; p < labels.length; p++) {
+                    bucketLabels[p] = labels[p] < 0 ? -1 : bucketOfColor[labels[p]];
+                }
+            }
+            return new ColorHistogram(source.getWidth(), source.getHeight(), colors.clone(), counts.clone(), colors.length, bucketLabels);
+        }
+
+        /* The bucket colors and counts without the per pixel labels toHistogram
+         * spreads over the image, for callers that only cluster the palette */
+        public ColorHistogram toColorCounts(ColorHistogram source) {
+            return new ColorHistogram(source.getWidth(), source.getHeight(), colors.clone(), counts.clone(), colors.length, null);
+        }
+
+        /* Per bucket values (cluster numbers for instance) spread to every source color */
+        public int[] expand(int[] bucketValues) {
+            if (bucketValues.length != colors.length) {
+                throw new IllegalArgumentException("Expected a value for each of the " + colors.length + " buckets.");
+            }
+
+            int[] values = new int[bucketOfColor.length];
+            for (int c = 0; c < values.length; c++) {
+                values[c] = bucketValues[bucketOfColor[c]];
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/* Streaming reader for the PNGs this project meets most: 8 bit RGB and RGBA, and
+ * indexed colors of 1 to 8 bits with their transparency, not interlaced. Rows are
+ * inflated and unfiltered as they are asked for, top to bottom, so only two rows of
+ * the image are in memory however big it is. ImageIO's reader decodes a source region
+ * by inflating every row above it, reading a large PNG one band at a time through it
+ * inflates the top of the image again for every band.
+ * Other PNGs (16 bit, grayscale, interlaced...) are left to ImageIO: isSupported tells
+ * them apart once the header is read. Colors come out as ImageIO gives them, ancillary
+ * chunks such as gamma are ignored. */
+public class PngDecoder implements Closeable {
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+
+    private final DataInputStream in;
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final int colorType;
+    private final int interlace;
+    private int[] palette;
+    // a tRNS chunk on a truecolor image, which ImageIO turns into alpha
+    private boolean transparentColor;
+    private DataInputStream rows;
+    private Inflater inflater;
+    private int bytesPerPixel;
+    private byte[] previous;
+    private byte[] current;
+    private int rowsRead;
+
+    /* Reads the chunks up to the image data */
+    public PngDecoder(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+
+        byte[] signature = new byte[SIGNATURE.length];
+        this.in.readFully(signature);
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (signature[i] != SIGNATURE[i]) {
+                throw new IOException("Not a PNG.");
+            }
+        }
+
+        int length = this.in.readInt();
+        if (!"IHDR".equals(readType()) || length != 13) {
+            throw new IOException("PNG does not start with its header.");
+        }
+        width = this.in.readInt();
+        height = this.in.readInt();
+        bitDepth = this.in.readUnsignedByte();
+        colorType = this.in.readUnsignedByte();
+        this.in.readUnsignedByte(); // compression, deflate
+        this.in.readUnsignedByte(); // filter method, adaptive
+        interlace = this.in.readUnsignedByte();
+        this.in.readInt(); // CRC
+        if (width <= 0 || height <= 0) {
+            throw new IOException("PNG of " + width + "x" + height + " pixels.");
+        }
+
+        // PLTE and tRNS come before the first IDAT, everything else is skipped
+        while (true) {
+            length = this.in.readInt();
+            String type = readType();
+            if ("IDAT".equals(type)) {
+                startData(length);
+                return;
+            } else if ("PLTE".equals(type)) {
+                palette = new int[256];
+                for (int i = 0; i < length / 3; i++) {
+                    palette[i] = 0xFF000000 | this.in.readUnsignedByte() << 16 | this.in.readUnsignedByte() << 8 | this.in.readUnsignedByte();
+                }
+                skip(length % 3);
+            } else if ("tRNS".equals(type) && colorType == 3 && palette != null) {
+                for (int i = 0; i < length; i++) {
+                    int alpha = this.in.readUnsignedByte();
+                    if (i < palette.length) {
+                        palette[i] = alpha << 24 | (palette[i] & 0xFFFFFF);
+                    }
+                }
+            } else if ("tRNS".equals(type)) {
+                transparentColor = true;
+                skip(length);
+            } else if ("IEND".equals(type)) {
+                throw new IOException("PNG without image data.");
+            } else {
+                skip(length);
+            }
+            this.in.readInt(); // CRC
+        }
+    }
+
+    private String readType() throws IOException {
+        byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    private void skip(int length) throws IOException {
+        if (in.skipBytes(length) != length) {
+            throw new EOFException("PNG chunk cut short.");
+        }
+    }
+
+    private void startData(int length) throws IOException {
+        inflater = new Inflater();
+        rows = new DataInputStream(new InflaterInputStream(new IdatInputStream(in, length), inflater, 1 << 16));
+
+        int channels = colorType == 2 ? 3 : colorType == 6 ? 4 : 1;
+        bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+        int rowBytes = (int) (((long) width * channels * bitDepth + 7) / 8);
+        previous = new byte[rowBytes];
+        current = new byte[rowBytes];
+    }
+
+    /* 8 bit RGB (without a transparent color) or RGBA, or indexed with a palette, and
+     * not interlaced */
+    public boolean isSupported() {
+        boolean truecolor = (colorType == 2 && !transparentColor || colorType == 6) && bitDepth == 8;
+        boolean indexed = colorType == 3 && bitDepth <= 8 && palette != null;
+        return interlace == 0 && (truecolor || indexed);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /* Decodes the next rows into argb from offset, one after the other as packed ARGB */
+    public void readRows(int[] argb, int offset, int rows) throws IOException {
+        if (!isSupported()) {
+            throw new IllegalStateException("PNG of color type " + colorType + ", " + bitDepth + " bits" + (interlace != 0 ? ", interlaced" : "") + " is not supported.");
+        }
+        if (rowsRead + rows > height) {
+            throw new IllegalStateException("The PNG only has " + height + " rows.");
+        }
+
+        for (int row = 0; row < rows; row++) {
+            int filter = this.rows.read();
+            if (filter < 0) {
+                throw new EOFException("PNG data ends after " + rowsRead + " rows.");
+            }
+            this.rows.readFully(current);
+            unfilter(filter);
+            toARGB(argb, offset + row * width);
+
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            rowsRead++;
+        }
+    }
+
+    private void unfilter(int filter) throws IOException {
+        int n = current.length;
+        int bpp = bytesPerPixel;
+
+        switch (filter) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < n; i++) {
+                    current[i] += current[i - bpp];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) {
+                    current[i] += previous[i];
+                }
+                break;
+            case 3:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? current[i - bpp] & 0xFF : 0;
+                    current[i] += (byte) ((a + (previous[i] & 0xFF)) >>> 1);
+                }
+                break;
+            case 4:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? current[i - bpp] & 0xFF : 0;
+                    int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    current[i] += (byte) paeth(a, previous[i] & 0xFF, c);
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter " + filter + " on row " + rowsRead + ".");
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private void toARGB(int[] argb, int offset) {
+        if (colorType == 6) {
+            for (int x = 0; x < width; x++) {
+                int i = x * 4;
+                argb[offset + x] = (current[i + 3] & 0xFF) << 24 | (current[i] & 0xFF) << 16 | (current[i + 1] & 0xFF) << 8 | current[i + 2] & 0xFF;
+            }
+        } else if (colorType == 2) {
+            for (int x = 0; x < width; x++) {
+                int i = x * 3;
+                argb[offset + x] = 0xFF000000 | (current[i] & 0xFF) << 16 | (current[i + 1] & 0xFF) << 8 | current[i + 2] & 0xFF;
+            }
+        } else {
+            // indices packed from the high bits of every byte
+            int perByte = 8 / bitDepth;
+            int mask = (1 << bitDepth) - 1;
+            for (int x = 0; x < width; x++) {
+                int shift = 8 - bitDepth * (x % perByte + 1);
+                argb[offset + x] = palette[(current[x / perByte] >> shift) & mask];
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            inflater.end();
+        }
+        in.close();
+    }
+
+    /* The data of consecutive IDAT chunks as one stream, ending at the first other chunk */
+    private static class IdatInputStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean ended;
+
+        IdatInputStream(DataInputStream in, int length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        // moves to the next IDAT once the current one is used up
+        private boolean next() throws IOException {
+            while (remaining == 0 && !ended) {
+                in.readInt(); // CRC
+                int length = in.readInt();
+                byte[] type = new byte[4];
+                in.readFully(type);
+                if (new String(type, StandardCharsets.US_ASCII).equals("IDAT")) {
+                    remaining = length;
+                } else {
+                    ended = true;
+                }
+            }
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!next()) {
+                return -1;
+            }
+            remaining--;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("PNG data cut short.");
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
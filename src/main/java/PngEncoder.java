@@ -0,0 +1,305 @@
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/* Minimal PNG writer for 8 bit RGBA images, with the deflate level and the row filter
+ * as settings (ImageIO always filters adaptively). Cluster layers are mostly transparent,
+ * NONE or SUB with a low level is usually several times faster than ImageIO for a
+ * slightly bigger file. Rows can also be streamed through a RowWriter, for images that
+ * are never whole in memory (see TiledSplitter). */
+public class PngEncoder {
+    public enum Filter {NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE}
+
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final int IDAT_SIZE = 1 << 16;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private Filter filter = Filter.ADAPTIVE;
+
+    /* 0 (store) to 9 (smallest), or Deflater.DEFAULT_COMPRESSION */
+    public PngEncoder setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9.");
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public PngEncoder setFilter(Filter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public void write(BufferedImage image, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), IDAT_SIZE)) {
+            write(image, out);
+        }
+    }
+
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        int width = image.getWidth();
+        int[] argb = new int[width];
+
+        try (RowWriter writer = open(out, image.getWidth(), image.getHeight())) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                ImageLoader.readRows(image, y, 1, argb);
+                writer.writeRows(argb, 0, 1);
+            }
+        }
+    }
+
+    /* Starts a PNG of the given size on out. Its rows are then given top to bottom to
+     * the RowWriter, which only keeps two of them, and closing it ends the PNG (out is
+     * flushed, not closed) */
+    public RowWriter open(OutputStream out, int width, int height) throws IOException {
+        return new RowWriter(out, width, height, false);
+    }
+
+    /* Same as above into a new file, closed with the RowWriter */
+    public RowWriter open(File file, int width, int height) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), IDAT_SIZE);
+        try {
+            return new RowWriter(out, width, height, true);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /* A PNG being written row by row */
+    public class RowWriter implements Closeable {
+        private final DataOutputStream data;
+        private final OutputStream target;
+        private final boolean closeTarget;
+        private final int width;
+        private final int height;
+        private final Deflater deflater;
+        private final DeflaterOutputStream compressed;
+        private byte[] previous;
+        private byte[] current;
+        private byte[] filtered;
+        private byte[] candidate;
+        private int rowsWritten;
+        private boolean closed;
+
+        private RowWriter(OutputStream out, int width, int height, boolean closeTarget) throws IOException {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("A PNG is at least 1x1 pixels.");
+            }
+
+            this.target = out;
+            this.closeTarget = closeTarget;
+            this.width = width;
+            this.height = height;
+            data = new DataOutputStream(out);
+
+            data.write(SIGNATURE);
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+            DataOutputStream headerData = new DataOutputStream(header);
+            headerData.writeInt(width);
+            headerData.writeInt(height);
+            headerData.writeByte(8); // bits per sample
+            headerData.writeByte(6); // RGBA
+            headerData.writeByte(0); // deflate
+            headerData.writeByte(0); // adaptive filtering, filter type per row
+            headerData.writeByte(0); // no interlace
+            writeChunk(data, "IHDR", header.toByteArray(), header.size());
+
+            deflater = new Deflater(compressionLevel);
+            if (filter != Filter.NONE) {
+                deflater.setStrategy(Deflater.FILTERED);
+            }
+            compressed = new DeflaterOutputStream(new IdatOutputStream(data), deflater, IDAT_SIZE);
+
+            previous = new byte[width * 4];
+            current = new byte[width * 4];
+            filtered = new byte[width * 4 + 1];
+            candidate = new byte[width * 4 + 1];
+        }
+
+        /* Writes the next rows, argb holding them one after the other from offset */
+        public void writeRows(int[] argb, int offset, int rows) throws IOException {
+            if (rowsWritten + rows > height) {
+                throw new IllegalStateException("The PNG only has " + height + " rows.");
+            }
+
+            for (int row = 0; row < rows; row++) {
+                int from = offset + row * width;
+                for (int x = 0; x < width; x++) {
+                    current[x * 4] = (byte) (argb[from + x] >>> 16);
+                    current[x * 4 + 1] = (byte) (argb[from + x] >>> 8);
+                    current[x * 4 + 2] = (byte) argb[from + x];
+                    current[x * 4 + 3] = (byte) (argb[from + x] >>> 24);
+                }
+
+                if (filter == Filter.ADAPTIVE) {
+                    // the usual heuristic: the filter whose output has the smallest sum of absolute values
+                    long best = Long.MAX_VALUE;
+                    for (Filter f : Filter.values()) {
+                        if (f == Filter.ADAPTIVE) {
+                            continue;
+                        }
+                        long score = filterRow(f, current, previous, candidate);
+                        if (score < best) {
+                            best = score;
+                            byte[] swap = filtered;
+                            filtered = candidate;
+                            candidate = swap;
+                        }
+                    }
+                } else {
+                    filterRow(filter, current, previous, filtered);
+                }
+
+                compressed.write(filtered);
+
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+                rowsWritten++;
+            }
+        }
+
+        /* Ends the PNG, which fails when rows are missing */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                if (rowsWritten < height) {
+                    throw new IOException("Only " + rowsWritten + " of the " + height + " rows were written.");
+                }
+                compressed.close();
+                writeChunk(data, "IEND", new byte[0], 0);
+                data.flush();
+            } finally {
+                deflater.end();
+                if (closeTarget) {
+                    target.close();
+                }
+            }
+        }
+    }
+
+    /* Writes the filter type and the filtered row into out, returns the sum of the
+     * absolute values of the filtered bytes */
+    private static long filterRow(Filter filter, byte[] row, byte[] previous, byte[] out) {
+        out[0] = (byte) filter.ordinal();
+        long sum = 0;
+
+        for (int i = 0; i < row.length; i++) {
+            int x = row[i] & 0xFF;
+            int a = i >= 4 ? row[i - 4] & 0xFF : 0;
+            int b = previous[i] & 0xFF;
+            int c = i >= 4 ? previous[i - 4] & 0xFF : 0;
+            int value;
+
+            switch (filter) {
+                case SUB:
+                    value = x - a;
+                    break;
+                case UP:
+                    value = x - b;
+                    break;
+                case AVERAGE:
+                    value = x - ((a + b) >>> 1);
+                    break;
+                case PAETH:
+                    value = x - paeth(a, b, c);
+                    break;
+                default:
+                    value = x;
+                    break;
+            }
+
+            out[i + 1] = (byte) value;
+            sum += Math.abs((byte) value);
+        }
+
+        return sum;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /* Cuts the deflate stream into IDAT chunks */
+    private static class IdatOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int count;
+
+        IdatOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the underlying stream stays open for IEND
+            flushChunk();
+        }
+    }
+}
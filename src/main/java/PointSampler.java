@@ -0,0 +1,10 @@
+import java.util.Random;
+
+/* Source of points for mini-batch K-Means. Implementations draw points at random from
+ * something too large (or too long) to be turned into a PointSet */
+public interface PointSampler {
+    String[] getAttrNames();
+
+    /* Writes count points in the interleaved layout at the start of batch */
+    void sample(double[] batch, int count, Random random);
+}
@@ -0,0 +1,113 @@
+import java.util.HashMap;
+import java.util.List;
+
+/* Columnar storage for the clustering engine. Every point is stored interleaved
+ * in one contiguous double array (point i occupies values[i * dimensions] up to
+ * values[i * dimensions + dimensions - 1]), so the distance kernels never box,
+ * hash or allocate. Points may carry a weight (the number of pixels of a color for
+ * instance), a null weight array means every point weighs 1. */
+public class PointSet {
+    private final String[] attrNames;
+    private final int dimensions;
+    private final int size;
+    private final double[] values;
+    private final double[] weights;
+
+    public PointSet(String[] attrNames, double[] values) {
+        this(attrNames, values, null);
+    }
+
+    public PointSet(String[] attrNames, double[] values, double[] weights) {
+        if (attrNames.length == 0 || values.length % attrNames.length != 0) {
+            throw new IllegalArgumentException("Values do not match the number of attributes.");
+        }
+
+        this.attrNames = attrNames.clone();
+        this.dimensions = attrNames.length;
+        this.size = values.length / attrNames.length;
+        this.values = values;
+
+        if (weights != null && weights.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " weights.");
+        }
+        this.weights = weights;
+    }
+
+    /* Squared euclidean distance between point a of the first array and point b
+     * of the second one, both with the given dimensionality */
+    public static double squaredDistance(double[] a, int aIndex, double[] b, int bIndex, int dimensions) {
+        int aOffset = aIndex * dimensions;
+        int bOffset = bIndex * dimensions;
+        double sum = 0.0;
+
+        for (int d = 0; d < dimensions; d++) {
+            double diff = a[aOffset + d] - b[bOffset + d];
+            sum += diff * diff;
+        }
+
+        return sum;
+    }
+
+    public double squaredDistance(int index, double[] centroids, int centroid) {
+        return squaredDistance(values, index, centroids, centroid, dimensions);
+    }
+
+    /* Converts HashMap based centroids (as produced by DataSet) into the interleaved
+     * layout, attributes missing from a centroid become NaN and never win a comparison */
+    public double[] toCentroidArray(List<HashMap<String, Double>> centroids) {
+        double[] result = new double[centroids.size() * dimensions];
+
+        for (int c = 0; c < centroids.size(); c++) {
+            HashMap<String, Double> centroid = centroids.get(c);
+            for (int d = 0; d < dimensions; d++) {
+                Double value = centroid.get(attrNames[d]);
+                result[c * dimensions + d] = value == null ? Double.NaN : value;
+            }
+        }
+
+        return result;
+    }
+
+    public HashMap<String, Double> toAttributeMap(double[] centroids, int centroid) {
+        HashMap<String, Double> result = new HashMap<>();
+
+        for (int d = 0; d < dimensions; d++) {
+            result.put(attrNames[d], centroids[centroid * dimensions + d]);
+        }
+
+        return result;
+    }
+
+    public double get(int index, int attribute) {
+        return values[index * dimensions + attribute];
+    }
+
+    public double getWeight(int index) {
+        return weights == null ? 1.0 : weights[index];
+    }
+
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    public String[] getAttrNames() {
+        return attrNames.clone();
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    /* Null when the points are not weighted */
+    public double[] getWeights() {
+        return weights;
+    }
+}
@@ -0,0 +1,325 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/* On-disk cache of color histograms and clustering results. Entries are keyed by the
+ * SHA-256 of the image file, results also by a string of the parameters they depend on
+ * (K, seed, algorithm...), so a repeat run or a sweep over K skips decoding and
+ * clustering. Every entry is one little endian binary file of int and double arrays,
+ * read back through a memory mapping.
+ *   <hash>.hist:          magic, version, width, height, size, label bytes,
+ *                         colors[size], counts[size], labels[width * height]
+ * Labels are stored plus one (0 for pixels without a color) in 1, 2 or 4 bytes
+ * depending on the number of colors.
+ *   <hash>-<params>.kmns: magic, version, K, dimensions, points, iterations, converged,
+ *                         SSE, centroids[K * dimensions], assignments[points]
+ * A hit touches the file's modification time and the least recently used files are
+ * deleted once the directory grows past its size limit, so the LRU order survives
+ * restarts. Entries are written to a temporary file and moved into place, unreadable
+ * ones count as misses and are deleted. */
+public class ResultCache {
+    private static final int HISTOGRAM_MAGIC = 0x48495354; // HIST
+    private static final int RESULT_MAGIC = 0x4B4D4E53; // KMNS
+    private static final int VERSION = 1;
+    private static final String HISTOGRAM_SUFFIX = ".hist";
+    private static final String RESULT_SUFFIX = ".kmns";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive.");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /* SHA-256 of the file content as 64 hex digits */
+    public static String contentHash(Path file) throws IOException {
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), sha256())) {
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer) >= 0) {
+                // digesting
+            }
+            return hex(((DigestInputStream) in).getMessageDigest().digest());
+        }
+    }
+
+    public static String contentHash(byte[] content) {
+        return hex(sha256().digest(content));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder str = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            str.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return str.toString();
+    }
+
+    private Path histogramFile(String hash) {
+        return directory.resolve(hash + HISTOGRAM_SUFFIX);
+    }
+
+    private Path resultFile(String hash, String parameters) {
+        String parametersHash = hex(sha256().digest(parameters.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        return directory.resolve(hash + "-" + parametersHash + RESULT_SUFFIX);
+    }
+
+    /* The histogram stored for the content hash, null when there is none */
+    public ColorHistogram getHistogram(String hash) {
+        Path file = histogramFile(hash);
+        ByteBuffer buffer = map(file);
+        if (buffer == null) {
+            return null;
+        }
+
+        try {
+            check(buffer, HISTOGRAM_MAGIC);
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int size = buffer.getInt();
+            int labelBytes = buffer.getInt();
+            int[] colors = getInts(buffer, size);
+            int[] counts = getInts(buffer, size);
+            int[] labels = new int[width * height];
+            if (labelBytes == 4) {
+                buffer.asIntBuffer().get(labels);
+            } else if (labelBytes == 2) {
+                short[] shorts = new short[labels.length];
+                buffer.asShortBuffer().get(shorts);
+                for (int p = 0; p < labels.length; p++) {
+                    labels[p] = shorts[p] & 0xFFFF;
+                }
+            } else {
+                for (int p = 0; p < labels.length; p++) {
+                    labels[p] = buffer.get() & 0xFF;
+                }
+            }
+            for (int p = 0; p < labels.length; p++) {
+                if (--labels[p] >= size) {
+                    throw new IllegalStateException("Label out of range.");
+                }
+            }
+
+            touch(file);
+            return new ColorHistogram(width, height, colors, counts, size, labels);
+        } catch (RuntimeException e) {
+            discard(file);
+            return null;
+        }
+    }
+
+    public void putHistogram(String hash, ColorHistogram histogram) throws IOException {
+        int size = histogram.size();
+        int[] labels = histogram.getLabels();
+        int labelBytes = size < 0xFF ? 1 : size < 0xFFFF ? 2 : 4;
+        ByteBuffer buffer = allocate(6 * 4 + 2L * size * 4 + (long) labels.length * labelBytes);
+
+        buffer.putInt(HISTOGRAM_MAGIC).putInt(VERSION);
+        buffer.putInt(histogram.getWidth()).putInt(histogram.getHeight()).putInt(size).putInt(labelBytes);
+        for (int c = 0; c < size; c++) {
+            buffer.putInt(histogram.getColor(c));
+        }
+        for (int c = 0; c < size; c++) {
+            buffer.putInt(histogram.getCount(c));
+        }
+        for (int label : labels) {
+            if (labelBytes == 1) {
+                buffer.put((byte) (label + 1));
+            } else if (labelBytes == 2) {
+                buffer.putShort((short) (label + 1));
+            } else {
+                buffer.putInt(label + 1);
+            }
+        }
+
+        store(histogramFile(hash), buffer);
+    }
+
+    /* The clustering stored for the content hash and parameters, null when there is none */
+    public KMeansResult getResult(String hash, String parameters) {
+        Path file = resultFile(hash, parameters);
+        ByteBuffer buffer = map(file);
+        if (buffer == null) {
+            return null;
+        }
+
+        try {
+            check(buffer, RESULT_MAGIC);
+            int K = buffer.getInt();
+            int dimensions = buffer.getInt();
+            int points = buffer.getInt();
+            int iterations = buffer.getInt();
+            boolean converged = buffer.getInt() != 0;
+            double SSE = buffer.getDouble();
+
+            double[] centroids = new double[K * dimensions];
+            buffer.asDoubleBuffer().get(centroids);
+            buffer.position(buffer.position() + centroids.length * 8);
+            int[] assignments = getInts(buffer, points);
+
+            touch(file);
+            return new KMeansResult(centroids, assignments, SSE, iterations, converged);
+        } catch (RuntimeException e) {
+            discard(file);
+            return null;
+        }
+    }
+
+    /* dimensions is the number of attributes of every centroid */
+    public void putResult(String hash, String parameters, KMeansResult result, int dimensions) throws IOException {
+        double[] centroids = result.getCentroids();
+        int[] assignments = result.getAssignments();
+        if (centroids.length % dimensions != 0) {
+            throw new IllegalArgumentException("Centroids do not have " + dimensions + " attributes.");
+        }
+
+        ByteBuffer buffer = allocate(7 * 4 + 8 + centroids.length * 8L + assignments.length * 4L);
+        buffer.putInt(RESULT_MAGIC).putInt(VERSION);
+        buffer.putInt(centroids.length / dimensions).putInt(dimensions).putInt(assignments.length);
+        buffer.putInt(result.getIterations()).putInt(result.isConverged() ? 1 : 0);
+        buffer.putDouble(result.getSSE());
+        buffer.asDoubleBuffer().put(centroids);
+        buffer.position(buffer.position() + centroids.length * 8);
+        buffer.asIntBuffer().put(assignments);
+        buffer.position(buffer.limit());
+
+        store(resultFile(hash, parameters), buffer);
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Entry of " + bytes + " bytes is too big to cache.");
+        }
+        return ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void check(ByteBuffer buffer, int magic) {
+        if (buffer.getInt() != magic || buffer.getInt() != VERSION) {
+            throw new IllegalStateException("Not a cache entry of this version.");
+        }
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static MappedByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void store(Path file, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        evict();
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only the eviction order suffers
+        }
+    }
+
+    private static void discard(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // it will be overwritten by the next put
+        }
+    }
+
+    /* Deletes the least recently used entries until the cache fits its size limit */
+    private synchronized void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.toString().endsWith(HISTOGRAM_SUFFIX) || file.toString().endsWith(RESULT_SUFFIX))
+                    .forEach(entries::add);
+        }
+
+        long total = 0;
+        List<FileTime> times = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        for (Path entry : entries) {
+            try {
+                times.add(Files.getLastModifiedTime(entry));
+                sizes.add(Files.size(entry));
+            } catch (NoSuchFileException e) {
+                times.add(FileTime.fromMillis(0));
+                sizes.add(0L);
+            }
+            total += sizes.get(sizes.size() - 1);
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(times::get));
+
+        for (int i : order) {
+            if (total <= maxBytes) {
+                break;
+            }
+            discard(entries.get(i));
+            total -= sizes.get(i);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
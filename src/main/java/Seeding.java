@@ -0,0 +1,370 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/* Initial centroid selection for the K-Means engine.
+ * Both methods keep, for every point, the squared distance to its nearest chosen
+ * centroid and update it incrementally with each new centroid, so choosing K
+ * centroids costs K passes over the data instead of K * K. The index of that nearest
+ * centroid is kept as well, so a new centroid c is only measured against point x
+ * when d(c, nearest(x)) < 2 * d(x, nearest(x)), otherwise the triangle inequality
+ * already proves it is not closer.
+ * KMEANS_PLUS_PLUS samples every new centroid proportionally to D^2 (Arthur and
+ * Vassilvitskii). KMEANS_PARALLEL is k-means|| (Bahmani et al.): a few rounds sample
+ * around oversampling * K candidates each in parallel, then the candidates, weighted by
+ * the number of points closest to them, are reduced to K centroids with k-means++.
+ * With weighted points every probability is also multiplied by the point weight, as
+ * if the point was repeated weight times.
+ * The passes over the points use the same fixed chunks as KMeans, so the selection
+ * only depends on the seed and never on the number of threads. */
+public class Seeding {
+    public enum Method {
+        KMEANS_PLUS_PLUS,
+        KMEANS_PARALLEL
+    }
+
+    private final Method method;
+    private final long seed;
+    private double oversampling = 1.0;
+    private int rounds = 5;
+
+    public Seeding(Method method, long seed) {
+        this.method = method;
+        this.seed = seed;
+    }
+
+    /* Expected number of candidates sampled per k-means|| round, as a factor of K */
+    public Seeding setOversampling(double oversampling) {
+        if (oversampling <= 0.0) {
+            throw new IllegalArgumentException("Oversampling must be positive.");
+        }
+
+        this.oversampling = oversampling;
+        return this;
+    }
+
+    public Seeding setRounds(int rounds) {
+        if (rounds <= 0) {
+            throw new IllegalArgumentException("Rounds must be positive.");
+        }
+
+        this.rounds = rounds;
+        return this;
+    }
+
+    /* Returns K centroids in the interleaved layout of the PointSet, the pool may be
+     * null to run on the calling thread */
+    public double[] select(PointSet points, int K, ForkJoinPool pool) {
+        if (points.size() == 0) {
+            throw new IllegalArgumentException("Can not select centroids from an empty data set.");
+        }
+
+        Random random = new Random(seed);
+
+        if (method == Method.KMEANS_PARALLEL) {
+            return kmeansParallel(points, K, random, pool);
+        }
+
+        double[] minDistances = new double[points.size()];
+        int[] nearest = new int[points.size()];
+        Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+        int[] chosen = new int[K];
+
+        chosen[0] = first(points, random);
+        double total = update(points, minDistances, nearest, points.getValues(), chosen, 0, 1, pool);
+
+        for (int c = 1; c < K; c++) {
+            chosen[c] = sample(minDistances, points.getWeights(), total, random);
+            total = update(points, minDistances, nearest, points.getValues(), chosen, c, c + 1, pool);
+        }
+
+        return gather(points.getValues(), points.getDimensions(), chosen);
+    }
+
+    private double[] kmeansParallel(PointSet points, int K, Random random, ForkJoinPool pool) {
+        int n = points.size();
+        double[] values = points.getValues();
+        double[] minDistances = new double[n];
+        int[] nearest = new int[n];
+        Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+
+        int[] candidates = new int[]{first(points, random)};
+        int candidateCount = 1;
+        double cost = update(points, minDistances, nearest, values, candidates, 0, 1, pool);
+        double expected = oversampling * K;
+
+        for (int round = 0; round < rounds && cost > 0.0; round++) {
+            int[] sampled = sampleRound(minDistances, points.getWeights(), expected / cost, random.nextLong(), pool);
+            if (sampled.length == 0) {
+                continue;
+            }
+
+            candidates = Arrays.copyOf(candidates, candidateCount + sampled.length);
+            System.arraycopy(sampled, 0, candidates, candidateCount, sampled.length);
+            cost = update(points, minDistances, nearest, values, candidates, candidateCount, candidates.length, pool);
+            candidateCount = candidates.length;
+        }
+
+        // not enough candidates, complete them with plain k-means++ over the points
+        while (candidateCount < K) {
+            candidates = Arrays.copyOf(candidates, candidateCount + 1);
+            candidates[candidateCount] = sample(minDistances, points.getWeights(), cost, random);
+            cost = update(points, minDistances, nearest, values, candidates, candidateCount, candidateCount + 1, pool);
+            candidateCount++;
+        }
+
+        if (candidateCount == K) {
+            return gather(values, points.getDimensions(), candidates);
+        }
+
+        // weight every candidate by the weight of the points closest to it and reduce them to K
+        double[] weights = new double[candidateCount];
+        for (int i = 0; i < n; i++) {
+            weights[nearest[i]] += points.getWeight(i);
+        }
+
+        int dimensions = points.getDimensions();
+        PointSet candidateSet = new PointSet(points.getAttrNames(), gather(values, dimensions, candidates), weights);
+        double[] candidateDistances = new double[candidateCount];
+        int[] candidateNearest = new int[candidateCount];
+        Arrays.fill(candidateDistances, Double.POSITIVE_INFINITY);
+        int[] chosen = new int[K];
+
+        chosen[0] = first(candidateSet, random);
+        double total = update(candidateSet, candidateDistances, candidateNearest, candidateSet.getValues(), chosen, 0, 1, null);
+        for (int c = 1; c < K; c++) {
+            chosen[c] = sample(candidateDistances, weights, total, random);
+            total = update(candidateSet, candidateDistances, candidateNearest, candidateSet.getValues(), chosen, c, c + 1, null);
+        }
+
+        return gather(candidateSet.getValues(), dimensions, chosen);
+    }
+
+    /* Uniform pick among the points, proportional to the weights when they have them */
+    private static int first(PointSet points, Random random) {
+        if (!points.isWeighted()) {
+            return random.nextInt(points.size());
+        }
+
+        double[] weights = points.getWeights();
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        return sample(weights, null, total, random);
+    }
+
+    /* Picks an index with probability proportional to distance * weight, when every
+     * distance is zero (fewer distinct points than centroids) the pick is uniform */
+    private static int sample(double[] distances, double[] weights, double total, Random random) {
+        if (!(total > 0.0)) {
+            return random.nextInt(distances.length);
+        }
+
+        double threshold = total * random.nextDouble();
+        double sum = 0.0;
+        int last = 0;
+
+        for (int i = 0; i < distances.length; i++) {
+            double mass = weights == null ? distances[i] : distances[i] * weights[i];
+            if (mass > 0.0) {
+                sum += mass;
+                last = i;
+                if (sum > threshold) {
+                    return i;
+                }
+            }
+        }
+
+        // rounding left the threshold just above the accumulated sum
+        return last;
+    }
+
+    private static double[] gather(double[] values, int dimensions, int[] indices) {
+        double[] result = new double[indices.length * dimensions];
+        for (int c = 0; c < indices.length; c++) {
+            System.arraycopy(values, indices[c] * dimensions, result, c * dimensions, dimensions);
+        }
+        return result;
+    }
+
+    /* Lowers the min distances with the new centroids indices[from] to indices[to - 1]
+     * (indices of the source array) and returns the new weighted total of min distances */
+    private static double update(PointSet points, double[] minDistances, int[] nearest, double[] source, int[] indices, int from, int to, ForkJoinPool pool) {
+        double[] centerDistances = centerDistances(source, points.getDimensions(), indices, from, to);
+        UpdateTask task = new UpdateTask(points, minDistances, nearest, centerDistances, source, indices, from, to, 0, chunks(points.size()), pool != null);
+        return pool != null ? pool.invoke(task) : task.compute();
+    }
+
+    /* Squared distances from every new centroid to every centroid chosen so far,
+     * row c - from holds the distances of indices[c] */
+    private static double[] centerDistances(double[] source, int dimensions, int[] indices, int from, int to) {
+        double[] result = new double[(to - from) * to];
+        for (int c = from; c < to; c++) {
+            for (int j = 0; j < to; j++) {
+                result[(c - from) * to + j] = PointSet.squaredDistance(source, indices[c], source, indices[j], dimensions);
+            }
+        }
+        return result;
+    }
+
+    private static int chunks(int size) {
+        return (size + KMeans.CHUNK_SIZE - 1) / KMeans.CHUNK_SIZE;
+    }
+
+    /* One k-means|| round: every point is kept independently with probability
+     * min(1, factor * distance * weight). Each chunk draws from its own generator derived from
+     * the round seed, so the sample does not depend on how chunks are scheduled */
+    private static int[] sampleRound(double[] minDistances, double[] weights, double factor, long roundSeed, ForkJoinPool pool) {
+        SampleTask task = new SampleTask(minDistances, weights, factor, roundSeed, 0, chunks(minDistances.length), pool != null);
+        List<Integer> sampled = pool != null ? pool.invoke(task) : task.compute();
+
+        int[] result = new int[sampled.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sampled.get(i);
+        }
+        return result;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    static class UpdateTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final PointSet points;
+        private final double[] minDistances;
+        private final int[] nearest;
+        private final double[] centerDistances;
+        private final double[] source;
+        private final int[] indices;
+        private final int from;
+        private final int to;
+        private final int fromChunk;
+        private final int toChunk;
+        private final boolean fork;
+
+        UpdateTask(PointSet points, double[] minDistances, int[] nearest, double[] centerDistances, double[] source, int[] indices, int from, int to, int fromChunk, int toChunk, boolean fork) {
+            this.points = points;
+            this.minDistances = minDistances;
+            this.nearest = nearest;
+            this.centerDistances = centerDistances;
+            this.source = source;
+            this.indices = indices;
+            this.from = from;
+            this.to = to;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.fork = fork;
+        }
+
+        @Override
+        protected Double compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                UpdateTask left = new UpdateTask(points, minDistances, nearest, centerDistances, source, indices, from, to, fromChunk, middle, fork);
+                UpdateTask right = new UpdateTask(points, minDistances, nearest, centerDistances, source, indices, from, to, middle, toChunk, fork);
+
+                if (fork) {
+                    right.fork();
+                    double sum = left.compute();
+                    return sum + right.join();
+                }
+                double sum = left.compute();
+                return sum + right.compute();
+            }
+
+            int dimensions = points.getDimensions();
+            double[] values = points.getValues();
+            double[] weights = points.getWeights();
+            int first = fromChunk * KMeans.CHUNK_SIZE;
+            int last = Math.min(points.size(), first + KMeans.CHUNK_SIZE);
+            double sum = 0.0;
+
+            for (int i = first; i < last; i++) {
+                double minDist = minDistances[i];
+                for (int c = from; c < to; c++) {
+                    // d(c, nearest) >= 2 * d(x, nearest) means c can not be closer
+                    if (centerDistances[(c - from) * to + nearest[i]] >= 4.0 * minDist) {
+                        continue;
+                    }
+
+                    double dist = PointSet.squaredDistance(values, i, source, indices[c], dimensions);
+                    if (dist < minDist) {
+                        minDist = dist;
+                        nearest[i] = c;
+                    }
+                }
+                minDistances[i] = minDist;
+                sum += weights == null ? minDist : minDist * weights[i];
+            }
+
+            return sum;
+        }
+    }
+
+    static class SampleTask extends RecursiveTask<List<Integer>> {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] minDistances;
+        private final double[] weights;
+        private final double factor;
+        private final long roundSeed;
+        private final int fromChunk;
+        private final int toChunk;
+        private final boolean fork;
+
+        SampleTask(double[] minDistances, double[] weights, double factor, long roundSeed, int fromChunk, int toChunk, boolean fork) {
+            this.minDistances = minDistances;
+            this.weights = weights;
+            this.factor = factor;
+            this.roundSeed = roundSeed;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.fork = fork;
+        }
+
+        @Override
+        protected List<Integer> compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                SampleTask left = new SampleTask(minDistances, weights, factor, roundSeed, fromChunk, middle, fork);
+                SampleTask right = new SampleTask(minDistances, weights, factor, roundSeed, middle, toChunk, fork);
+
+                List<Integer> result;
+                if (fork) {
+                    right.fork();
+                    result = left.compute();
+                    result.addAll(right.join());
+                } else {
+                    result = left.compute();
+                    result.addAll(right.compute());
+                }
+                return result;
+            }
+
+            SplittableRandom random = new SplittableRandom(roundSeed + fromChunk * 0x9E3779B97F4A7C15L);
+            List<Integer> result = new ArrayList<>();
+            int first = fromChunk * KMeans.CHUNK_SIZE;
+            int last = Math.min(minDistances.length, first + KMeans.CHUNK_SIZE);
+
+            for (int i = first; i < last; i++) {
+                double mass = weights == null ? minDistances[i] : minDistances[i] * weights[i];
+                if (mass > 0.0 && random.nextDouble() < factor * mass) {
+                    result.add(i);
+                }
+            }
+
+            return result;
+        }
+    }
+}
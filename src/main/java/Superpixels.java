@@ -0,0 +1,445 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/* SLIC superpixels (Achanta et al., "SLIC Superpixels Compared to State-of-the-Art
+ * Superpixel Methods"): K-Means on color plus position where every center only looks
+ * at the pixels of a window twice the grid step around it, so an iteration costs a few
+ * distance computations per pixel whatever the number of regions.
+ * Everything is kept in primitive per pixel arrays: the histogram's color index per
+ * pixel, the color space attributes of every distinct color (converted once), the
+ * distance to and the region of every pixel. The distance is
+ *   color distance^2 + (compactness / step)^2 * pixel distance^2
+ * so a higher compactness gives rounder, more regular regions.
+ * The image is split in bands of rows, each band takes the centers whose window reaches
+ * it in index order and sums its own pixels, so bands run in parallel on a pool and the
+ * result does not depend on the number of threads.
+ * A last pass makes every region one connected piece: fragments cut off from their
+ * region, and pieces smaller than a quarter of a grid cell, join a neighbouring region.
+ * Pixels without a color belong to no region. */
+public class Superpixels {
+    // rows per band, at least one grid step
+    static final int BAND_ROWS = 64;
+
+    private final int regions;
+    private double compactness = 10.0;
+    private int iterations = 10;
+    private ColorSpace colorSpace = ColorSpace.CIELAB;
+    private ForkJoinPool pool;
+
+    /* regions is the number of grid cells the centers start from, the result has about
+     * as many regions */
+    public Superpixels(int regions) {
+        if (regions <= 0) {
+            throw new IllegalArgumentException("The number of regions must be positive.");
+        }
+
+        this.regions = regions;
+    }
+
+    /* Weight of the position against the color, 1 to 40 being the usual range for
+     * CIELAB and OKLab */
+    public Superpixels setCompactness(double compactness) {
+        if (compactness <= 0.0) {
+            throw new IllegalArgumentException("Compactness must be positive.");
+        }
+
+        this.compactness = compactness;
+        return this;
+    }
+
+    public Superpixels setIterations(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Iterations must be positive.");
+        }
+
+        this.iterations = iterations;
+        return this;
+    }
+
+    public Superpixels setColorSpace(ColorSpace colorSpace) {
+        this.colorSpace = colorSpace;
+        return this;
+    }
+
+    /* Runs the bands on the pool, null runs them on the calling thread */
+    public Superpixels setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public Segmentation segment(ColorHistogram histogram) {
+        int width = histogram.getWidth();
+        int height = histogram.getHeight();
+        int[] labels = histogram.getLabels();
+        int step = Math.max(1, (int) Math.round(Math.sqrt((double) labels.length / regions)));
+
+        double[] colorValues = new double[histogram.size() * 4];
+        for (int c = 0; c < histogram.size(); c++) {
+            colorSpace.toPoint(histogram.getColor(c), colorValues, c * 4);
+        }
+
+        // centers start on a grid, each moved to the smoothest pixel of its 3x3 neighbourhood
+        int columns = Math.max(1, (width + step / 2) / step);
+        int rows = Math.max(1, (height + step / 2) / step);
+        int K = columns * rows;
+        double[] centerValues = new double[K * 4];
+        double[] centerX = new double[K];
+        double[] centerY = new double[K];
+
+        for (int row = 0, k = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++, k++) {
+                int x = Math.min(width - 1, column * step + step / 2);
+                int y = Math.min(height - 1, row * step + step / 2);
+                int bestX = x;
+                int bestY = y;
+                double bestGradient = gradient(labels, colorValues, width, height, x, y);
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        double gradient = gradient(labels, colorValues, width, height, x + dx, y + dy);
+                        if (gradient < bestGradient) {
+                            bestGradient = gradient;
+                            bestX = x + dx;
+                            bestY = y + dy;
+                        }
+                    }
+                }
+
+                centerX[k] = bestX;
+                centerY[k] = bestY;
+                int label = labels[bestY * width + bestX];
+                if (label >= 0) {
+                    System.arraycopy(colorValues, label * 4, centerValues, k * 4, 4);
+                } else {
+                    // no color under the center, it gets one at the first update
+                    Arrays.fill(centerValues, k * 4, k * 4 + 4, Double.NaN);
+                }
+            }
+        }
+
+        double spatialWeight = (compactness / step) * (compactness / step);
+        double[] distances = new double[labels.length];
+        int[] regionOfPixel = new int[labels.length];
+        int bandRows = Math.max(step, BAND_ROWS);
+        int bands = (height + bandRows - 1) / bandRows;
+        double[][] sums = new double[bands][K * 6];
+        int[][] counts = new int[bands][K];
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            forEachBand(bands, band -> {
+                int fromY = band * bandRows;
+                int toY = Math.min(height, fromY + bandRows);
+                Arrays.fill(distances, fromY * width, toY * width, Double.POSITIVE_INFINITY);
+                Arrays.fill(regionOfPixel, fromY * width, toY * width, -1);
+                for (int k = 0; k < K; k++) {
+                    assignWindow(k, fromY, toY, labels, colorValues, width, step, spatialWeight, centerValues, centerX, centerY, distances, regionOfPixel);
+                }
+                sumBand(fromY, toY, labels, colorValues, width, regionOfPixel, sums[band], counts[band]);
+            });
+            updateCenters(sums, counts, centerValues, centerX, centerY);
+        }
+
+        int[] connected = new int[labels.length];
+        int regionCount = connect(labels, regionOfPixel, width, height, Math.max(1, step * step / 4), connected);
+        return new Segmentation(histogram, colorSpace, colorValues, connected, regionCount);
+    }
+
+    private void forEachBand(int bands, IntConsumer work) {
+        if (pool == null) {
+            for (int band = 0; band < bands; band++) {
+                work.accept(band);
+            }
+        } else {
+            pool.invoke(new BandTask(0, bands, work));
+        }
+    }
+
+    /* Gives the pixels of the window around center k in rows fromBandY to toBandY - 1
+     * to it when it is their closest center so far */
+    private static void assignWindow(int k, int fromBandY, int toBandY, int[] labels, double[] colorValues, int width, int step, double spatialWeight,
+                                     double[] centerValues, double[] centerX, double[] centerY, double[] distances, int[] regionOfPixel) {
+        int fromY = Math.max(fromBandY, (int) (centerY[k] - step));
+        int toY = Math.min(toBandY - 1, (int) (centerY[k] + step));
+        if (fromY > toY) {
+            return;
+        }
+        int fromX = Math.max(0, (int) (centerX[k] - step));
+        int toX = Math.min(width - 1, (int) (centerX[k] + step));
+        int offset = k * 4;
+        double c0 = centerValues[offset];
+        double c1 = centerValues[offset + 1];
+        double c2 = centerValues[offset + 2];
+        double c3 = centerValues[offset + 3];
+
+        for (int y = fromY; y <= toY; y++) {
+            double dy = y - centerY[k];
+            double rowDistance = spatialWeight * dy * dy;
+            for (int x = fromX, p = y * width + fromX; x <= toX; x++, p++) {
+                int label = labels[p];
+                if (label < 0) {
+                    continue;
+                }
+
+                int colorOffset = label * 4;
+                double d0 = colorValues[colorOffset] - c0;
+                double d1 = colorValues[colorOffset + 1] - c1;
+                double d2 = colorValues[colorOffset + 2] - c2;
+                double d3 = colorValues[colorOffset + 3] - c3;
+                double dx = x - centerX[k];
+                double distance = d0 * d0 + d1 * d1 + d2 * d2 + d3 * d3 + spatialWeight * dx * dx + rowDistance;
+                if (distance < distances[p]) {
+                    distances[p] = distance;
+                    regionOfPixel[p] = k;
+                }
+            }
+        }
+    }
+
+    /* Color and position sums and pixel counts of every center over rows fromY to toY - 1 */
+    private static void sumBand(int fromY, int toY, int[] labels, double[] colorValues, int width, int[] regionOfPixel, double[] sums, int[] counts) {
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(counts, 0);
+        for (int y = fromY, p = fromY * width; y < toY; y++) {
+            for (int x = 0; x < width; x++, p++) {
+                int k = regionOfPixel[p];
+                if (k < 0) {
+                    continue;
+                }
+
+                int colorOffset = labels[p] * 4;
+                int offset = k * 6;
+                sums[offset] += colorValues[colorOffset];
+                sums[offset + 1] += colorValues[colorOffset + 1];
+                sums[offset + 2] += colorValues[colorOffset + 2];
+                sums[offset + 3] += colorValues[colorOffset + 3];
+                sums[offset + 4] += x;
+                sums[offset + 5] += y;
+                counts[k]++;
+            }
+        }
+    }
+
+    /* Moves every center to the mean color and position of its pixels, the band sums
+     * being added in band order */
+    private static void updateCenters(double[][] sums, int[][] counts, double[] centerValues, double[] centerX, double[] centerY) {
+        int K = centerX.length;
+        double[] total = new double[6];
+
+        for (int k = 0; k < K; k++) {
+            Arrays.fill(total, 0.0);
+            int count = 0;
+            for (int band = 0; band < counts.length; band++) {
+                for (int d = 0; d < 6; d++) {
+                    total[d] += sums[band][k * 6 + d];
+                }
+                count += counts[band][k];
+            }
+
+            if (count > 0) {
+                for (int d = 0; d < 4; d++) {
+                    centerValues[k * 4 + d] = total[d] / count;
+                }
+                centerX[k] = total[4] / count;
+                centerY[k] = total[5] / count;
+            }
+        }
+    }
+
+    /* Squared color change across the pixel, infinite at the border and around pixels
+     * without a color */
+    private static double gradient(int[] labels, double[] colorValues, int width, int height, int x, int y) {
+        if (x < 1 || y < 1 || x >= width - 1 || y >= height - 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        int p = y * width + x;
+        int left = labels[p - 1];
+        int right = labels[p + 1];
+        int up = labels[p - width];
+        int down = labels[p + width];
+        if (left < 0 || right < 0 || up < 0 || down < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return PointSet.squaredDistance(colorValues, left, colorValues, right, 4) + PointSet.squaredDistance(colorValues, up, colorValues, down, 4);
+    }
+
+    /* Numbers the 4-connected pieces of every region in scan order into connected and
+     * returns how many there are. A piece smaller than minSize, or of pixels no center
+     * reached, takes the number of a piece it touches instead */
+    private static int connect(int[] labels, int[] regionOfPixel, int width, int height, int minSize, int[] connected) {
+        Arrays.fill(connected, -1);
+        int[] queue = new int[labels.length];
+        int next = 0;
+
+        for (int start = 0; start < labels.length; start++) {
+            if (connected[start] >= 0 || labels[start] < 0) {
+                continue;
+            }
+
+            int region = regionOfPixel[start];
+            int adjacent = -1;
+            int size = 0;
+            queue[size++] = start;
+            connected[start] = next;
+
+            for (int head = 0; head < size; head++) {
+                int p = queue[head];
+                int x = p % width;
+                int y = p / width;
+
+                for (int n = 0; n < 4; n++) {
+                    int neighbour;
+                    if (n == 0) {
+                        neighbour = x > 0 ? p - 1 : -1;
+                    } else if (n == 1) {
+                        neighbour = x < width - 1 ? p + 1 : -1;
+                    } else if (n == 2) {
+                        neighbour = y > 0 ? p - width : -1;
+                    } else {
+                        neighbour = y < height - 1 ? p + width : -1;
+                    }
+                    if (neighbour < 0 || labels[neighbour] < 0) {
+                        continue;
+                    }
+
+                    if (connected[neighbour] < 0 && regionOfPixel[neighbour] == region) {
+                        connected[neighbour] = next;
+                        queue[size++] = neighbour;
+                    } else if (connected[neighbour] >= 0 && connected[neighbour] != next && adjacent < 0) {
+                        adjacent = connected[neighbour];
+                    }
+                }
+            }
+
+            if ((size < minSize || region < 0) && adjacent >= 0) {
+                for (int i = 0; i < size; i++) {
+                    connected[queue[i]] = adjacent;
+                }
+            } else {
+                next++;
+            }
+        }
+
+        return next;
+    }
+
+    public int getRegions() {
+        return regions;
+    }
+
+    public double getCompactness() {
+        return compactness;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public ColorSpace getColorSpace() {
+        return colorSpace;
+    }
+
+    private static class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer work;
+
+        BandTask(int from, int to, IntConsumer work) {
+            this.from = from;
+            this.to = to;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BandTask(from, middle, work), new BandTask(middle, to, work));
+            } else {
+                work.accept(from);
+            }
+        }
+    }
+
+    /* Region of every pixel of an image, each region being one connected piece */
+    public static class Segmentation {
+        private final ColorHistogram histogram;
+        private final ColorSpace colorSpace;
+        private final double[] colorValues;
+        private final int[] regionOfPixel;
+        private final int regionCount;
+        private final int[] pixelCounts;
+
+        Segmentation(ColorHistogram histogram, ColorSpace colorSpace, double[] colorValues, int[] regionOfPixel, int regionCount) {
+            this.histogram = histogram;
+            this.colorSpace = colorSpace;
+            this.colorValues = colorValues;
+            this.regionOfPixel = regionOfPixel;
+            this.regionCount = regionCount;
+
+            pixelCounts = new int[regionCount];
+            for (int region : regionOfPixel) {
+                if (region >= 0) {
+                    pixelCounts[region]++;
+                }
+            }
+        }
+
+        /* Region of every pixel, y * width + x, -1 for pixels without a color */
+        public int[] getRegionOfPixel() {
+            return regionOfPixel;
+        }
+
+        public int getRegionCount() {
+            return regionCount;
+        }
+
+        public int getPixelCount(int region) {
+            return pixelCounts[region];
+        }
+
+        /* One point per region at the mean color of its pixels, in the segmentation's
+         * color space and weighing its pixel count, to cluster regions into layers */
+        public PointSet toPointSet() {
+            double[] values = new double[regionCount * 4];
+            int[] labels = histogram.getLabels();
+
+            for (int p = 0; p < labels.length; p++) {
+                int region = regionOfPixel[p];
+                if (region >= 0) {
+                    for (int d = 0; d < 4; d++) {
+                        values[region * 4 + d] += colorValues[labels[p] * 4 + d];
+                    }
+                }
+            }
+
+            double[] weights = new double[regionCount];
+            for (int region = 0; region < regionCount; region++) {
+                weights[region] = pixelCounts[region];
+                for (int d = 0; d < 4; d++) {
+                    values[region * 4 + d] /= pixelCounts[region];
+                }
+            }
+
+            return new PointSet(colorSpace.getAttrNames(), values, weights);
+        }
+
+        /* Cluster of every pixel from the cluster of every region, -1 for pixels
+         * without a color, see LayerRenderer.fromPixelClusters */
+        public int[] toPixelClusters(int[] clusterOfRegion) {
+            if (clusterOfRegion.length != regionCount) {
+                throw new IllegalArgumentException("Expected a cluster for each of the " + regionCount + " regions.");
+            }
+
+            int[] clusters = new int[regionOfPixel.length];
+            for (int p = 0; p < clusters.length; p++) {
+                clusters[p] = regionOfPixel[p] < 0 ? -1 : clusterOfRegion[regionOfPixel[p]];
+            }
+            return clusters;
+        }
+    }
+}
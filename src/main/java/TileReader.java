@@ -0,0 +1,109 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Iterator;
+
+/* Reads an image one band of full width rows at a time, top to bottom, without ever
+ * decoding the whole of it. Bands are decoded by the format's ImageReader with the
+ * band as source region (ImageReadParam.setSourceRegion), which TIFF and BMP readers
+ * serve without touching the rest of the file. PNG readers inflate every row above
+ * the region, so PNGs go through PngDecoder instead, which keeps its place between
+ * bands, unless it does not support them. JPEG readers also decode from the top, large
+ * JPEGs are best converted to TIFF first. */
+public class TileReader implements Closeable {
+    private final File file;
+    private final int width;
+    private final int height;
+    private PngDecoder png;
+    private ImageInputStream stream;
+    private ImageReader reader;
+    private int nextRow;
+
+    public TileReader(File file) throws IOException {
+        this.file = file;
+
+        PngDecoder decoder = null;
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            decoder = new PngDecoder(in);
+        } catch (IOException e) {
+            // not a PNG, or a broken one ImageIO may still make sense of
+            in.close();
+        }
+        if (decoder != null && decoder.isSupported()) {
+            png = decoder;
+            width = decoder.getWidth();
+            height = decoder.getHeight();
+            return;
+        }
+        if (decoder != null) {
+            decoder.close();
+        }
+
+        stream = ImageIO.createImageInputStream(file);
+        if (stream == null) {
+            throw new IOException("Can not read " + file + ".");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new IOException("No image reader for " + file + ".");
+        }
+        reader = readers.next();
+        reader.setInput(stream, false, true);
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /* Rows not read yet */
+    public int getRemainingRows() {
+        return height - nextRow;
+    }
+
+    /* Decodes the next band of at most maxRows rows into argb from index 0, returns the
+     * number of rows read, 0 once the image is done */
+    public int readRows(int[] argb, int maxRows) throws IOException {
+        int rows = Math.min(maxRows, height - nextRow);
+        if (rows <= 0) {
+            return 0;
+        }
+
+        if (png != null) {
+            png.readRows(argb, 0, rows);
+        } else {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, nextRow, width, rows));
+            BufferedImage band = reader.read(0, param);
+            if (band.getWidth() != width || band.getHeight() != rows) {
+                throw new IOException("The reader of " + file + " gave a " + band.getWidth() + "x" + band.getHeight() + " band instead of " + width + "x" + rows + ".");
+            }
+            ImageLoader.readRows(band, 0, rows, argb);
+        }
+
+        nextRow += rows;
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (png != null) {
+            png.close();
+        }
+        if (reader != null) {
+            reader.dispose();
+            stream.close();
+        }
+    }
+}
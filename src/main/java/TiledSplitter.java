@@ -0,0 +1,274 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/* Splits images too big to hold in memory (a 20000x20000 scan is 1.6 GB of ARGB ints,
+ * and as much again for the labels of a ColorHistogram) into the same layers as
+ * LayerWriter's FULL mode, in two passes over the file through a TileReader:
+ * the first one counts the colors of every band into a ColorHistogram without labels,
+ * which is clustered (on a reduced palette when it has more than paletteColors colors,
+ * see PaletteReducer), the second one decodes the bands again, looks up the cluster of
+ * every pixel's color and streams the band into one PNG per layer plus the fused one,
+ * each written row by row by a PngEncoder.RowWriter.
+ * Memory is one band of pixels, the histogram (a few ints per distinct color, not per
+ * pixel) and K + 1 open PNGs of two rows each, whatever the height of the image. The
+ * layers of a band are encoded in parallel on the pool when there is one. */
+public class TiledSplitter {
+    private final int K;
+    private int bandRows = 256;
+    private int paletteColors = Main.PALETTE_COLORS;
+    private KMeans.Algorithm algorithm = KMeans.Algorithm.HAMERLY;
+    private ColorSpace colorSpace = ColorSpace.RGB;
+    private Seeding seeding = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 0);
+    private PngEncoder encoder = new PngEncoder().setFilter(PngEncoder.Filter.NONE);
+    private ForkJoinPool pool;
+
+    public TiledSplitter(int K) {
+        if (K <= 0) {
+            throw new IllegalArgumentException("K must be positive.");
+        }
+
+        this.K = K;
+    }
+
+    /* Height of the bands decoded at once, memory grows with width * bandRows */
+    public TiledSplitter setBandRows(int bandRows) {
+        if (bandRows < 1) {
+            throw new IllegalArgumentException("A band is at least one row.");
+        }
+        this.bandRows = bandRows;
+        return this;
+    }
+
+    /* Histograms with more colors are clustered on a palette of that many colors */
+    public TiledSplitter setPaletteColors(int paletteColors) {
+        if (paletteColors < 1) {
+            throw new IllegalArgumentException("The palette needs at least one color.");
+        }
+        this.paletteColors = paletteColors;
+        return this;
+    }
+
+    public TiledSplitter setAlgorithm(KMeans.Algorithm algorithm) {
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    public TiledSplitter setColorSpace(ColorSpace colorSpace) {
+        this.colorSpace = colorSpace;
+        return this;
+    }
+
+    public TiledSplitter setSeeding(Seeding seeding) {
+        this.seeding = seeding;
+        return this;
+    }
+
+    public TiledSplitter setEncoder(PngEncoder encoder) {
+        this.encoder = encoder;
+        return this;
+    }
+
+    /* Null clusters and encodes on the calling thread */
+    public TiledSplitter setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /* Splits the image into colorImage<N>.png and colorImageFused.png in the directory,
+     * returns the metrics of the job */
+    public JobMetrics split(File input, File outputDirectory) throws IOException {
+        JobMetrics metrics = new JobMetrics(input.getPath());
+        split(input, outputDirectory, metrics);
+        metrics.finish();
+        return metrics;
+    }
+
+    /* Same as above, recording the stages into the given metrics: histogram and output
+     * (both decoding the image), palette and cluster */
+    public void split(File input, File outputDirectory, JobMetrics metrics) throws IOException {
+        ColorHistogram histogram = metrics.time("histogram", () -> countColors(input));
+        metrics.describe(histogram.getWidth(), histogram.getHeight(), histogram.size());
+
+        int[] clusterOfColor = cluster(histogram, metrics);
+
+        metrics.addBytesWritten(metrics.time("output", () -> writeLayers(input, outputDirectory, histogram, clusterOfColor)));
+    }
+
+    private ColorHistogram countColors(File input) throws IOException {
+        try (TileReader reader = new TileReader(input)) {
+            int width = reader.getWidth();
+            ColorHistogram histogram = ColorHistogram.withoutLabels(width, reader.getHeight());
+            int[] band = new int[Math.multiplyExact(width, Math.min(bandRows, reader.getHeight()))];
+
+            int rows;
+            while ((rows = reader.readRows(band, bandRows)) > 0) {
+                histogram.addPixels(0, band, rows * width);
+            }
+
+            return histogram;
+        }
+    }
+
+    private int[] cluster(ColorHistogram histogram, JobMetrics metrics) {
+        ColorHistogram colors = histogram;
+        PaletteReducer.Reduction palette = null;
+        if (histogram.size() > paletteColors) {
+            JobMetrics.Stage stage = metrics.stage("palette");
+            try {
+                palette = new PaletteReducer(paletteColors).reduce(histogram);
+                colors = palette.toColorCounts(histogram);
+            } finally {
+                stage.stop();
+            }
+        }
+
+        JobMetrics.Stage stage = metrics.stage("cluster");
+        try {
+            KMeansResult result = new KMeans(Math.min(K, colors.size()))
+                    .setAlgorithm(algorithm)
+                    .setSeeding(seeding)
+                    .setPool(pool)
+                    .addListener(metrics)
+                    .run(new DataSet(colors, colorSpace).toPointSet());
+
+            // every color of the image goes to the cluster of its nearest centroid
+            return palette == null ? result.getAssignments() : new CentroidIndex(result.getCentroids(), 4).assign(histogram, colorSpace);
+        } finally {
+            stage.stop();
+        }
+    }
+
+    /* Returns the number of bytes written */
+    private long writeLayers(File input, File outputDirectory, ColorHistogram histogram, int[] clusterOfColor) throws IOException {
+        int[] clusters = Arrays.stream(clusterOfColor).distinct().sorted().toArray();
+        int[] slotOfColor = new int[clusterOfColor.length];
+        for (int c = 0; c < clusterOfColor.length; c++) {
+            slotOfColor[c] = Arrays.binarySearch(clusters, clusterOfColor[c]);
+        }
+
+        List<File> files = new ArrayList<>();
+        for (int cluster : clusters) {
+            files.add(new File(outputDirectory, LayerWriter.layerFileName(cluster)));
+        }
+        files.add(new File(outputDirectory, LayerWriter.FUSED));
+
+        try (TileReader reader = new TileReader(input)) {
+            int width = reader.getWidth();
+            int[] band = new int[Math.multiplyExact(width, Math.min(bandRows, reader.getHeight()))];
+            // position in clusters of the layer of every pixel of the band
+            int[] slots = new int[band.length];
+
+            List<PngEncoder.RowWriter> writers = new ArrayList<>();
+            boolean written = false;
+            try {
+                for (File file : files) {
+                    writers.add(encoder.open(file, width, reader.getHeight()));
+                }
+
+                int rows;
+                while ((rows = reader.readRows(band, bandRows)) > 0) {
+                    int pixels = rows * width;
+                    int last = 0;
+                    int slot = -1;
+                    for (int p = 0; p < pixels; p++) {
+                        if (band[p] != last || slot < 0) {
+                            last = band[p];
+                            int color = histogram.indexOf(last);
+                            if (color < 0) {
+                                throw new IOException(input + " changed while it was split.");
+                            }
+                            slot = slotOfColor[color];
+                        }
+                        slots[p] = slot;
+                    }
+
+                    // one task per layer, the last writer is the fused image's
+                    int bandHeight = rows;
+                    List<Callable<Void>> layers = new ArrayList<>();
+                    for (int s = 0; s < writers.size(); s++) {
+                        int layer = s;
+                        layers.add(() -> {
+                            writeBand(writers.get(layer), layer == clusters.length ? -1 : layer, band, slots, width, bandHeight);
+                            return null;
+                        });
+                    }
+                    runAll(layers);
+                }
+                written = true;
+            } finally {
+                // after a failure the PNGs are incomplete, closing them only cleans up
+                IOException failure = null;
+                for (PngEncoder.RowWriter writer : writers) {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        failure = failure == null ? e : failure;
+                    }
+                }
+                if (written && failure != null) {
+                    throw failure;
+                }
+            }
+        }
+
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    // slot -1 is the fused image, every pixel of the band
+    private static void writeBand(PngEncoder.RowWriter writer, int slot, int[] band, int[] slots, int width, int rows) throws IOException {
+        if (slot < 0) {
+            writer.writeRows(band, 0, rows);
+            return;
+        }
+
+        int[] row = new int[width];
+        for (int y = 0; y < rows; y++) {
+            int from = y * width;
+            for (int x = 0; x < width; x++) {
+                row[x] = slots[from + x] == slot ? band[from + x] : 0;
+            }
+            writer.writeRows(row, 0, 1);
+        }
+    }
+
+    private void runAll(List<Callable<Void>> tasks) throws IOException {
+        if (pool == null) {
+            for (Callable<Void> task : tasks) {
+                call(task);
+            }
+            return;
+        }
+
+        try {
+            for (Future<Void> done : pool.invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing layers.", e);
+        } catch (ExecutionException e) {
+            throw LayerWriter.unwrap(e.getCause());
+        }
+    }
+
+    private static void call(Callable<Void> task) throws IOException {
+        try {
+            task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
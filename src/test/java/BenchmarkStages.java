@@ -0,0 +1,127 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/* The stages of Main's pipeline for benchmarks.StageBenchmark, every stage starting
+ * from the output of the previous ones, computed once by load */
+public class BenchmarkStages implements benchmarks.Stages {
+    static final String SYNTHETIC = "synthetic-";
+    static final int ITERATIONS = 5;
+
+    private String name;
+    private int K;
+    private byte[] content;
+    private BufferedImage image;
+    private ColorHistogram histogram;
+    private PointSet points;
+    private double[] seeds;
+    private int[] assignments;
+    private LayerRenderer renderer;
+    private int largestCluster;
+    private BufferedImage layer;
+    private final PngEncoder encoder = new PngEncoder().setFilter(PngEncoder.Filter.NONE);
+
+    @Override
+    public void load(String image, int K) throws IOException {
+        this.name = image;
+        this.K = K;
+
+        if (image.startsWith(SYNTHETIC)) {
+            int size = Integer.parseInt(image.substring(SYNTHETIC.length()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(synthetic(size), "png", out);
+            content = out.toByteArray();
+        } else {
+            Path file = Paths.get("src/main/resources", image);
+            if (!Files.exists(file)) {
+                throw new FileNotFoundException(file + " is not in this tree.");
+            }
+            content = Files.readAllBytes(file);
+        }
+
+        this.image = (BufferedImage) decode();
+        histogram = (ColorHistogram) histogram();
+        points = new DataSet(histogram, Main.COLOR_SPACE).toPointSet();
+        seeds = (double[]) seed();
+        assignments = ((KMeansResult) iterate(KMeans.Algorithm.HAMERLY.name())).getAssignments();
+        renderer = (LayerRenderer) assignLayers();
+
+        for (int cluster : renderer.getClusters()) {
+            if (renderer.getPixelCount(cluster) > renderer.getPixelCount(largestCluster)) {
+                largestCluster = cluster;
+            }
+        }
+        layer = (BufferedImage) renderLayer();
+    }
+
+    /* Smooth gradients with 3 bits of noise per channel, about one color every few
+     * pixels like a photo */
+    static BufferedImage synthetic(int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Random random = new Random(42);
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int r = x * 255 / size;
+                int g = y * 255 / size;
+                int b = (x + y) * 255 / (2 * size);
+                pixels[y * size + x] = 0xFF000000 | (r ^ random.nextInt(8)) << 16 | (g ^ random.nextInt(8)) << 8 | (b ^ random.nextInt(8));
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public Object decode() throws IOException {
+        return ImageLoader.read(new ByteArrayInputStream(content), name);
+    }
+
+    @Override
+    public Object histogram() {
+        return ColorHistogram.fromImage(image);
+    }
+
+    @Override
+    public Object reducePalette() {
+        return new PaletteReducer(Main.PALETTE_COLORS).reduce(histogram);
+    }
+
+    @Override
+    public Object seed() {
+        return new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7).select(points, Math.min(K, points.size()), null);
+    }
+
+    @Override
+    public Object iterate(String algorithm) {
+        return new KMeans(seeds.length / points.getDimensions())
+                .setAlgorithm(KMeans.Algorithm.valueOf(algorithm))
+                .setMaxIterations(ITERATIONS)
+                .run(points, seeds);
+    }
+
+    @Override
+    public Object assignLayers() {
+        return new LayerRenderer(histogram, assignments);
+    }
+
+    @Override
+    public Object renderLayer() {
+        return renderer.renderLayer(largestCluster);
+    }
+
+    @Override
+    public Object encodeLayer() throws IOException {
+        encoder.write(layer, OutputStream.nullOutputStream());
+        return layer;
+    }
+}
@@ -0,0 +1,17 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CentroidIndexTest {
+    @Test
+    void findsTheCentroidsTheScanFinds() throws IOException {
+        PointSet points = CentroidIndexWorkload.colors("pine_tree.png");
+
+        for (int K = 8; K <= 512; K *= 4) {
+            double[] centroids = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7).select(points, K, null);
+            assertArrayEquals(CentroidIndexWorkload.scan(points, centroids, K), CentroidIndexWorkload.index(points, centroids), "K = " + K);
+        }
+    }
+}
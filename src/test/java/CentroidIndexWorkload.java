@@ -0,0 +1,54 @@
+import java.io.File;
+import java.io.IOException;
+
+/* For benchmarks.CentroidIndexBenchmark: the nearest of K k-means++ centroids to every
+ * color of an image of src/main/resources, by scanning the centroids and through a
+ * CentroidIndex */
+public class CentroidIndexWorkload implements benchmarks.CentroidIndexBenchmark.Workload {
+    private PointSet points;
+    private double[] centroids;
+    private int K;
+
+    @Override
+    public void setUp(String image, int K) throws IOException {
+        points = colors(image);
+        this.K = K;
+        centroids = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7).select(points, K, null);
+    }
+
+    @Override
+    public int[] scan() {
+        return scan(points, centroids, K);
+    }
+
+    @Override
+    public int[] index() {
+        return index(points, centroids);
+    }
+
+    static PointSet colors(String image) throws IOException {
+        return new DataSet(ColorHistogram.fromImage(ImageLoader.read(new File("src/main/resources", image)))).toPointSet();
+    }
+
+    static int[] scan(PointSet points, double[] centroids, int K) {
+        int[] nearest = new int[points.size()];
+        double[] distance = new double[1];
+        for (int i = 0; i < points.size(); i++) {
+            nearest[i] = KMeans.nearestCentroid(points, i, centroids, K, distance);
+        }
+        return nearest;
+    }
+
+    // the index is built every time, as KMeans does every iteration
+    static int[] index(PointSet points, double[] centroids) {
+        int dimensions = points.getDimensions();
+        double[] values = points.getValues();
+        CentroidIndex index = new CentroidIndex(centroids, dimensions);
+        int[] nearest = new int[points.size()];
+        double[] distance = new double[1];
+        for (int i = 0; i < points.size(); i++) {
+            nearest[i] = index.nearest(values, i * dimensions, distance);
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,33 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColorHistogramTest {
+    @Test
+    void countsAndLabelsLikeAHashMap() throws IOException {
+        BufferedImage image = ImageLoader.read(new File("src/main/resources/pine_tree.png"));
+        int[] argb = ImageLoaderWorkload.perPixel(image);
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int color : argb) {
+            counts.merge(color, 1, Integer::sum);
+        }
+
+        ColorHistogram histogram = ColorHistogram.fromImage(image);
+
+        assertEquals(counts.size(), histogram.size());
+        for (int c = 0; c < histogram.size(); c++) {
+            assertEquals(counts.get(histogram.getColor(c)), histogram.getCount(c));
+            assertEquals(c, histogram.indexOf(histogram.getColor(c)));
+        }
+        int[] labels = histogram.getLabels();
+        for (int p = 0; p < argb.length; p++) {
+            assertEquals(argb[p], histogram.getColor(labels[p]), "pixel " + p);
+        }
+    }
+}
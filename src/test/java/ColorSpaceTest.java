@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColorSpaceTest {
+    private static final double TOLERANCE = 0.01;
+
+    // Ottosson's published OKLab of the sRGB primaries, scaled by 100 like ColorSpace
+    @Test
+    void oklabMatchesPublishedValues() {
+        assertLab(ColorSpace.OKLAB, 0xFFFF0000, 62.79554, 22.48631, 12.58463);
+        assertLab(ColorSpace.OKLAB, 0xFF00FF00, 86.64396, -23.38876, 17.94985);
+        assertLab(ColorSpace.OKLAB, 0xFF0000FF, 45.20137, -3.24570, -31.15281);
+        assertLab(ColorSpace.OKLAB, 0xFFFFFFFF, 100, 0, 0);
+        assertLab(ColorSpace.OKLAB, 0xFF000000, 0, 0, 0);
+    }
+
+    // CIELAB under D65 as published by Lindbloom's calculator
+    @Test
+    void cielabMatchesPublishedValues() {
+        assertLab(ColorSpace.CIELAB, 0xFFFF0000, 53.2408, 80.0925, 67.2032);
+        assertLab(ColorSpace.CIELAB, 0xFF00FF00, 87.7347, -86.1827, 83.1793);
+        assertLab(ColorSpace.CIELAB, 0xFF0000FF, 32.2970, 79.1875, -107.8602);
+        assertLab(ColorSpace.CIELAB, 0xFF808080, 53.5850, 0, 0);
+        assertLab(ColorSpace.CIELAB, 0xFFFFFFFF, 100, 0, 0);
+        assertLab(ColorSpace.CIELAB, 0xFF000000, 0, 0, 0);
+    }
+
+    @Test
+    void alphaRunsFromZeroToOneHundred() {
+        for (ColorSpace space : new ColorSpace[] {ColorSpace.OKLAB, ColorSpace.CIELAB}) {
+            double[] values = new double[4];
+            space.toPoint(0x00FFFFFF, values, 0);
+            assertEquals(0, values[3], TOLERANCE);
+            space.toPoint(0xFFFFFFFF, values, 0);
+            assertEquals(100, values[3], TOLERANCE);
+        }
+    }
+
+    private static void assertLab(ColorSpace space, int argb, double L, double a, double b) {
+        double[] values = new double[5];
+        space.toPoint(argb, values, 1);
+        String color = space + " " + Integer.toHexString(argb);
+        assertEquals(L, values[1], TOLERANCE, color + " L");
+        assertEquals(a, values[2], TOLERANCE, color + " a");
+        assertEquals(b, values[3], TOLERANCE, color + " b");
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvParserTest {
+    @Test
+    void parsesNumbersLikeParseDouble() throws IOException {
+        Random random = new Random(23);
+        List<String> numbers = new ArrayList<>(List.of(
+                "0", "-0", "0.0", "-0.0", "+1", "255.0", "007", "1.", ".5", "-.5", "1e22", "1e23", "1e-22", "1e-23",
+                "4.9e-324", "1.7976931348623157E308", "1e400", "-1e400", "123456789012345678", "1234567890123456789",
+                "9007199254740993", "0.1", "0.30000000000000004", "2.2250738585072014E-308", "1E5", "1e+5", "3.14e-0",
+                "NaN", "Infinity", "-Infinity", "0x1p3", "1d", "2f", " 1", "1 "));
+        for (int i = 0; i < 2000; i++) {
+            numbers.add(String.valueOf(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20)));
+            numbers.add(String.valueOf((float) random.nextGaussian()));
+            numbers.add(random.nextInt(256) + "." + random.nextInt(1000));
+            numbers.add(String.valueOf(Double.longBitsToDouble(random.nextLong())));
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (String number : numbers) {
+            text.append(number).append(",\n");
+        }
+        CsvParser parser = parser(text.toString());
+        double[] value = new double[1];
+        for (String number : numbers) {
+            assertTrue(parser.nextLine());
+            parser.parseFields(value, 0, 1);
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(number)), Double.doubleToLongBits(value[0]), number);
+        }
+        assertFalse(parser.nextLine());
+    }
+
+    @Test
+    void failsLikeParseDouble() throws IOException {
+        for (String field : new String[]{"", "-", "1e", "1.2.3", "abc", "1e-"}) {
+            CsvParser parser = parser(field + "\n");
+            parser.nextLine();
+            assertThrows(NumberFormatException.class, () -> parser.parseFields(new double[1], 0, 1), field);
+        }
+    }
+
+    @Test
+    void splitsLinesLikeReadLine() throws IOException {
+        String text = "a,b\n1,2\r3,4\r\n\n5,6,,\r\n,,\n7";
+        CsvParser parser = parser(text);
+
+        String[] lines = text.split("\r\n|\r|\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(parser.nextLine());
+            assertEquals(i + 1, parser.getLineNumber());
+            // String.split drops trailing empty fields but an empty line is one field
+            assertArrayEquals(lines[i].split(","), parser.fields(), lines[i]);
+            assertEquals(lines[i].split(",").length, parser.fieldCount(), lines[i]);
+        }
+        assertFalse(parser.nextLine());
+    }
+
+    @Test
+    void readsLinesLongerThanItsBuffer() throws IOException {
+        int fields = 40_000;
+        StringBuilder line = new StringBuilder();
+        for (int f = 0; f < fields; f++) {
+            line.append(f).append(".5,");
+        }
+        CsvParser parser = parser(line + "\r\n" + line);
+
+        double[] values = new double[fields];
+        for (int l = 0; l < 2; l++) {
+            assertTrue(parser.nextLine());
+            assertEquals(fields, parser.fieldCount());
+            parser.parseFields(values, 0, fields);
+            for (int f = 0; f < fields; f++) {
+                assertEquals(f + 0.5, values[f]);
+            }
+        }
+        assertFalse(parser.nextLine());
+    }
+
+    private static CsvParser parser(String text) {
+        return new CsvParser(new ByteArrayInputStream(text.getBytes()));
+    }
+}
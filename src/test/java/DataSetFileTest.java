@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DataSetFileTest {
+    private File csv;
+    private File binary;
+
+    @BeforeEach
+    void createFiles() throws IOException {
+        csv = File.createTempFile("dataset", ".csv");
+        binary = File.createTempFile("dataset", ".bin");
+    }
+
+    @AfterEach
+    void deleteFiles() throws IOException {
+        Files.deleteIfExists(csv.toPath());
+        Files.deleteIfExists(binary.toPath());
+    }
+
+    @Test
+    void csvParserReadsWhatSplitRead() throws IOException {
+        writeCsv(5000, new Random(29));
+
+        DataSet data = new DataSet(csv.getPath());
+
+        assertArrayEquals(DataSetIoWorkload.readBySplit(csv), data.toPointSet().getValues());
+    }
+
+    @Test
+    void binaryFormatKeepsEveryValue() throws IOException {
+        writeCsv(3000, new Random(31));
+        DataSet data = new DataSet(csv.getPath());
+        int[] assignments = new int[data.size()];
+        for (int i = 0; i < assignments.length; i++) {
+            assignments[i] = i % 7 - 1;
+        }
+        data.setClusterAssignments(assignments);
+
+        data.writeBinary(binary.getPath());
+        DataSet read = DataSet.readBinary(binary.getPath());
+
+        assertEquals(data.getAttrNames(), read.getAttrNames());
+        assertArrayEquals(data.toPointSet().getValues(), read.toPointSet().getValues());
+        for (int i = 0; i < data.size(); i++) {
+            assertEquals(data.getClusterNo(i), read.getClusterNo(i));
+            assertEquals(data.getWeight(i), read.getWeight(i));
+        }
+    }
+
+    @Test
+    void binaryFormatKeepsWeights() throws IOException {
+        ColorHistogram histogram = ColorHistogram.fromImage(ImageLoader.read(new File("src/main/resources/mosaic.png")));
+        DataSet data = new DataSet(histogram, ColorSpace.OKLAB);
+
+        data.writeBinary(binary.getPath());
+        DataSet read = DataSet.readBinary(binary.getPath());
+
+        assertArrayEquals(data.toPointSet().getValues(), read.toPointSet().getValues());
+        assertArrayEquals(data.toPointSet().getWeights(), read.toPointSet().getWeights());
+    }
+
+    @Test
+    void rejectsTruncatedAndForeignFiles() throws IOException {
+        writeCsv(100, new Random(37));
+        new DataSet(csv.getPath()).writeBinary(binary.getPath());
+        try (RandomAccessFile file = new RandomAccessFile(binary, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        assertThrows(IOException.class, () -> DataSet.readBinary(binary.getPath()));
+
+        assertThrows(IOException.class, () -> DataSet.readBinary(csv.getPath()));
+    }
+
+    // colors and a column that does not fit floats
+    private void writeCsv(int records, Random random) throws IOException {
+        StringBuilder text = new StringBuilder("Red,Green,Blue,Alpha,Noise\n");
+        for (int i = 0; i < records; i++) {
+            text.append(random.nextInt(256)).append(".0,").append(random.nextInt(256)).append(".0,")
+                    .append(random.nextInt(256)).append(".0,255.0,").append(random.nextGaussian()).append('\n');
+        }
+        Files.writeString(csv.toPath(), text);
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/* For benchmarks.DataSetIoBenchmark: a data set of random colors read and written in
+ * every format, the CSV read line by line with String.split and Double.parseDouble as
+ * DataSet used to, the same file through CsvParser, createCsvOutput, and DataSetFile's
+ * columnar binary format, all in temporary files */
+public class DataSetIoWorkload implements benchmarks.DataSetIoBenchmark.Workload {
+    private File csv;
+    private File output;
+    private File binary;
+    private DataSet data;
+
+    @Override
+    public void setUp(int records) throws IOException {
+        csv = File.createTempFile("dataset", ".csv");
+        output = File.createTempFile("dataset", ".out.csv");
+        binary = File.createTempFile("dataset", ".bin");
+
+        Random random = new Random(records);
+        try (Writer out = new BufferedWriter(new FileWriter(csv))) {
+            out.write("Red,Green,Blue,Alpha\n");
+            for (int i = 0; i < records; i++) {
+                out.write(random.nextInt(256) + ".0," + random.nextInt(256) + ".0," + random.nextInt(256) + ".0,255.0\n");
+            }
+        }
+        data = new DataSet(csv.getPath());
+        data.writeBinary(binary.getPath());
+    }
+
+    @Override
+    public double[] split() throws IOException {
+        return readBySplit(csv);
+    }
+
+    @Override
+    public DataSet csvParser() throws IOException {
+        return new DataSet(csv.getPath());
+    }
+
+    @Override
+    public File createCsvOutput() throws IOException {
+        data.createCsvOutput(output.getPath());
+        return output;
+    }
+
+    @Override
+    public File writeBinary() throws IOException {
+        data.writeBinary(binary.getPath());
+        return binary;
+    }
+
+    @Override
+    public DataSet readBinary() throws IOException {
+        return DataSet.readBinary(binary.getPath());
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv.toPath());
+        Files.deleteIfExists(output.toPath());
+        Files.deleteIfExists(binary.toPath());
+    }
+
+    // the former DataSet(String) loop
+    static double[] readBySplit(File csv) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(csv))) {
+            int dimensions = in.readLine().split(",").length;
+            double[] values = new double[16 * dimensions];
+            int size = 0;
+            String row;
+            while ((row = in.readLine()) != null) {
+                String[] data = row.split(",");
+                if (size + dimensions > values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                for (int d = 0; d < dimensions; d++) {
+                    values[size++] = Double.parseDouble(data[d]);
+                }
+            }
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
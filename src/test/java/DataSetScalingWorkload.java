@@ -0,0 +1,71 @@
+import java.awt.Color;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/* For benchmarks.DataSetScalingBenchmark: the phases of the legacy DataSet API over a
+ * color map of random colors, each one from the same data set */
+public class DataSetScalingWorkload implements benchmarks.DataSetScalingBenchmark.Workload {
+    // DataSet(HashMap) reports the records it read, which would flood JMH's output
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private HashMap<Color, List<int[]>> colorMap;
+    private DataSet data;
+    private int K;
+    private int[] assignments;
+    private LinkedList<HashMap<String, Double>> centroids;
+
+    @Override
+    public void setUp(int records, int K) {
+        this.K = K;
+
+        Random random = new Random(records);
+        colorMap = new HashMap<>();
+        while (colorMap.size() < records) {
+            colorMap.put(new Color(random.nextInt(1 << 24)), List.of());
+        }
+        assignments = new int[records];
+        for (int i = 0; i < records; i++) {
+            assignments[i] = random.nextInt(K);
+        }
+
+        data = build();
+        data.setClusterAssignments(assignments);
+        centroids = data.recomputeCentroids(K);
+    }
+
+    @Override
+    public Object assign() {
+        data.setClusterAssignments(assignments);
+        return data;
+    }
+
+    @Override
+    public LinkedList<HashMap<String, Double>> recomputeCentroids() {
+        return data.recomputeCentroids(K);
+    }
+
+    @Override
+    public Double totalSSE() {
+        return data.calculateTotalSSE(centroids);
+    }
+
+    @Override
+    public HashMap<Integer, List<Color>> createOutputColorMap() {
+        return data.createOutputColorMap(colorMap);
+    }
+
+    @Override
+    public DataSet build() {
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        try {
+            return new DataSet(colorMap);
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
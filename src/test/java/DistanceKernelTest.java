@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+// the kernel get() chose is the vector one when the tests run with the vector profile
+class DistanceKernelTest {
+    @Test
+    void kernelsAgreeToTheLastBit() throws IOException {
+        PointSet points = CentroidIndexWorkload.colors("pine_tree.png");
+        int size = points.size();
+
+        for (int K = 1; K <= 1024; K *= 4) {
+            double[] centroids = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7).select(points, K, null);
+            int[] expected = CentroidIndexWorkload.scan(points, centroids, K);
+            double[] expectedDistances = new double[size];
+            int[] nearest = new int[size];
+            double[] distances = new double[size];
+
+            DistanceKernelWorkload.scan(new DistanceKernel.Scalar(), points, centroids, K, nearest, expectedDistances);
+            assertArrayEquals(expected, nearest, "scalar, K = " + K);
+
+            DistanceKernelWorkload.scan(DistanceKernel.get(), points, centroids, K, nearest, distances);
+            assertArrayEquals(expected, nearest, DistanceKernel.get().getName() + ", K = " + K);
+            assertArrayEquals(expectedDistances, distances, DistanceKernel.get().getName() + ", K = " + K);
+        }
+    }
+
+    // the vector kernel's lanes and the points left over after them
+    @Test
+    void handlesEveryBlockSize() {
+        double[] values = new double[37 * 3];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i * 7919) % 101;
+        }
+        double[] centroids = {0, 0, 0, 50, 50, 50, 100, 0, 100, 25, 75, 25, 60, 60, 10};
+
+        for (int to = 0; to <= 37; to++) {
+            int[] expected = new int[37];
+            double[] expectedDistances = new double[37];
+            new DistanceKernel.Scalar().nearest(values, 0, to, 3, centroids, 5, expected, expectedDistances);
+            int[] nearest = new int[37];
+            double[] distances = new double[37];
+            DistanceKernel.get().nearest(values, 0, to, 3, centroids, 5, nearest, distances);
+
+            assertArrayEquals(expected, nearest, "points 0 to " + to);
+            assertArrayEquals(expectedDistances, distances, "points 0 to " + to);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.io.IOException;
+
+/* For benchmarks.DistanceKernelBenchmark: the nearest of K k-means++ centroids to every
+ * color of an image of src/main/resources, chunk by chunk as KMeans scans them, with the
+ * scalar DistanceKernel and with the one DistanceKernel.get() chose */
+public class DistanceKernelWorkload implements benchmarks.DistanceKernelBenchmark.Workload {
+    private PointSet points;
+    private double[] centroids;
+    private int K;
+    private final DistanceKernel scalar = new DistanceKernel.Scalar();
+    private int[] nearest;
+    private double[] distances;
+
+    @Override
+    public void setUp(String image, int K) throws IOException {
+        points = CentroidIndexWorkload.colors(image);
+        this.K = K;
+        centroids = new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7).select(points, K, null);
+        nearest = new int[points.size()];
+        distances = new double[points.size()];
+    }
+
+    @Override
+    public int[] scalar() {
+        scan(scalar, points, centroids, K, nearest, distances);
+        return nearest;
+    }
+
+    @Override
+    public int[] kernel() {
+        scan(DistanceKernel.get(), points, centroids, K, nearest, distances);
+        return nearest;
+    }
+
+    static void scan(DistanceKernel kernel, PointSet points, double[] centroids, int K, int[] nearest, double[] distances) {
+        double[] values = points.getValues();
+        int[] chunkNearest = new int[KMeans.CHUNK_SIZE];
+        double[] chunkDistances = new double[KMeans.CHUNK_SIZE];
+        for (int from = 0; from < points.size(); from += KMeans.CHUNK_SIZE) {
+            int to = Math.min(points.size(), from + KMeans.CHUNK_SIZE);
+            kernel.nearest(values, from, to, points.getDimensions(), centroids, K, chunkNearest, chunkDistances);
+            System.arraycopy(chunkNearest, 0, nearest, from, to - from);
+            System.arraycopy(chunkDistances, 0, distances, from, to - from);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameSequenceTest {
+    static final int K = 20;
+
+    @Test
+    void warmStartsTakeFewerIterationsAndKeepTheLayers() throws IOException {
+        ColorHistogram[] frames = FrameSequenceWorkload.frames(ImageLoader.read(new File("src/main/resources/pine_tree.png")), 10);
+
+        FrameSequence sequence = FrameSequenceWorkload.warmStarted(K);
+        int coldIterations = 0;
+        int warmIterations = 0;
+        double[] previous = null;
+        for (int f = 0; f < frames.length; f++) {
+            KMeansResult cold = FrameSequenceWorkload.fromScratch(K).run(new DataSet(frames[f]).toPointSet());
+            KMeansResult warm = sequence.next(frames[f]);
+            coldIterations += cold.getIterations();
+            warmIterations += warm.getIterations();
+
+            assertTrue(warm.getSSE() < cold.getSSE() * 1.02, "frame " + f + ": SSE " + warm.getSSE() + " warm started, " + cold.getSSE() + " from scratch");
+            if (previous != null) {
+                assertFalse(sequence.isLastReseeded(), "frame " + f);
+                // a brightening of one level per frame moves every layer about as much
+                for (int c = 0; c < K; c++) {
+                    double move = Math.sqrt(PointSet.squaredDistance(previous, c, warm.getCentroids(), c, 4));
+                    assertTrue(move < 5.0, "frame " + f + ": centroid " + c + " moved by " + move);
+                }
+            }
+            previous = warm.getCentroids();
+        }
+
+        assertTrue(warmIterations * 2 < coldIterations, warmIterations + " iterations warm started, " + coldIterations + " from scratch");
+    }
+}
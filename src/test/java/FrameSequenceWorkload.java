@@ -0,0 +1,75 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/* For benchmarks.FrameSequenceBenchmark: synthetic frames of an image of
+ * src/main/resources, panned one pixel and brightened a little per frame, clustered one
+ * by one from scratch and as a FrameSequence. Both stop once an iteration improves the
+ * SSE by less than 0.01% */
+public class FrameSequenceWorkload implements benchmarks.FrameSequenceBenchmark.Workload {
+    static final double TOLERANCE = 1e-4;
+
+    private ColorHistogram[] frames;
+    private int K;
+
+    @Override
+    public void setUp(String image, int K, int frames) throws IOException {
+        BufferedImage source = ImageLoader.read(new File("src/main/resources", image));
+        this.K = K;
+        this.frames = frames(source, frames);
+    }
+
+    @Override
+    public KMeansResult fromScratch() {
+        KMeansResult result = null;
+        for (ColorHistogram frame : frames) {
+            result = fromScratch(K).run(new DataSet(frame).toPointSet());
+        }
+        return result;
+    }
+
+    @Override
+    public KMeansResult warmStarted() {
+        FrameSequence sequence = warmStarted(K);
+        KMeansResult result = null;
+        for (ColorHistogram frame : frames) {
+            result = sequence.next(frame);
+        }
+        return result;
+    }
+
+    static KMeans fromScratch(int K) {
+        return new KMeans(K).setAlgorithm(KMeans.Algorithm.HAMERLY).setSSETolerance(TOLERANCE)
+                .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7));
+    }
+
+    static FrameSequence warmStarted(int K) {
+        return new FrameSequence(K).setSSETolerance(TOLERANCE).setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7));
+    }
+
+    static ColorHistogram[] frames(BufferedImage source, int count) {
+        int[] argb = ImageLoader.readARGB(source);
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        ColorHistogram[] frames = new ColorHistogram[count];
+        int[] row = new int[width - count];
+        for (int f = 0; f < count; f++) {
+            frames[f] = new ColorHistogram(row.length, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < row.length; x++) {
+                    row[x] = brighten(argb[y * width + x + f], f);
+                }
+                frames[f].addPixels(y * row.length, row, row.length);
+            }
+        }
+        return frames;
+    }
+
+    static int brighten(int argb, int amount) {
+        int r = Math.min(255, ((argb >> 16) & 0xFF) + amount);
+        int g = Math.min(255, ((argb >> 8) & 0xFF) + amount);
+        int b = Math.min(255, (argb & 0xFF) + amount);
+        return argb & 0xFF000000 | r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ImageLoaderTest {
+    @ParameterizedTest
+    @ValueSource(ints = {
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB_PRE,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_BYTE_INDEXED,
+            BufferedImage.TYPE_BYTE_GRAY,
+            BufferedImage.TYPE_USHORT_565_RGB
+    })
+    void readsWhatGetRGBReads(int type) throws IOException {
+        BufferedImage image = ImageLoaderWorkload.convert(ImageLoader.read(new File("src/main/resources/pine_tree.png")), type);
+
+        assertArrayEquals(ImageLoaderWorkload.perPixel(image), ImageLoader.readARGB(image));
+    }
+
+    @Test
+    void readsRowsInBands() throws IOException {
+        BufferedImage image = ImageLoaderWorkload.convert(ImageLoader.read(new File("src/main/resources/mosaic.png")), BufferedImage.TYPE_3BYTE_BGR);
+        int width = image.getWidth();
+        int[] expected = ImageLoaderWorkload.perPixel(image);
+
+        int rows = 7;
+        int[] band = new int[width * rows];
+        for (int y = 0; y < image.getHeight(); y += rows) {
+            int count = Math.min(rows, image.getHeight() - y);
+            ImageLoader.readRows(image, y, count, band);
+            assertArrayEquals(Arrays.copyOfRange(expected, y * width, (y + count) * width), Arrays.copyOf(band, count * width), "rows from " + y);
+        }
+    }
+
+    @Test
+    void readsSubimages() throws IOException {
+        BufferedImage image = ImageLoaderWorkload.convert(ImageLoader.read(new File("src/main/resources/pine_tree.png")), BufferedImage.TYPE_INT_ARGB);
+        BufferedImage part = image.getSubimage(13, 17, 101, 67);
+
+        assertArrayEquals(ImageLoaderWorkload.perPixel(part), ImageLoader.readARGB(part));
+    }
+}
@@ -0,0 +1,47 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/* For benchmarks.ImageLoaderBenchmark: the old column-major per-pixel getRGB loop and
+ * ImageLoader over an image of src/main/resources converted to one of the types ImageIO
+ * commonly returns */
+public class ImageLoaderWorkload implements benchmarks.ImageLoaderBenchmark.Workload {
+    private BufferedImage image;
+
+    @Override
+    public void setUp(String image, String type) throws IOException, ReflectiveOperationException {
+        BufferedImage source = ImageLoader.read(new File("src/main/resources", image));
+        this.image = convert(source, BufferedImage.class.getField("TYPE_" + type).getInt(null));
+    }
+
+    @Override
+    public int[] getRGB() {
+        return perPixel(image);
+    }
+
+    @Override
+    public int[] readARGB() {
+        return ImageLoader.readARGB(image);
+    }
+
+    // the loop ColorMap and Main used to run
+    static int[] perPixel(BufferedImage image) {
+        int width = image.getWidth();
+        int[] argb = new int[width * image.getHeight()];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < image.getHeight(); j++) {
+                argb[j * width + i] = image.getRGB(i, j);
+            }
+        }
+        return argb;
+    }
+
+    static BufferedImage convert(BufferedImage source, int type) {
+        BufferedImage image = new BufferedImage(source.getWidth(), source.getHeight(), type);
+        Graphics2D g2d = image.createGraphics();
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IntIntHashMapTest {
+    private static final int MISSING = -1;
+
+    @Test
+    void keepsEveryKeyAcrossResizes() {
+        IntIntHashMap map = new IntIntHashMap(4, MISSING);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(41);
+
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt();
+            Integer previous = expected.putIfAbsent(key, i);
+            assertEquals(previous == null ? MISSING : previous, map.putIfAbsent(key, i));
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(MISSING, map.get(12345));
+    }
+
+    // the slot is the top bits of the hash, keys must not pile up on their low bits
+    @Test
+    void tellsApartKeysThatOnlyDifferInTheirHighBits() {
+        IntIntHashMap map = new IntIntHashMap(16, MISSING);
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(MISSING, map.putIfAbsent(i << 20, i));
+            assertEquals(MISSING, map.putIfAbsent(i << 20 | 0xFF, i + 4096));
+        }
+
+        assertEquals(8192, map.size());
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(i, map.get(i << 20));
+            assertEquals(i + 4096, map.get(i << 20 | 0xFF));
+        }
+    }
+
+    @Test
+    void keepsTheZeroKeyAside() {
+        IntIntHashMap map = new IntIntHashMap(4, MISSING);
+        assertEquals(MISSING, map.get(0));
+        assertEquals(MISSING, map.putIfAbsent(0, 7));
+        assertEquals(7, map.putIfAbsent(0, 8));
+        assertEquals(7, map.get(0));
+        assertEquals(1, map.size());
+
+        map.clear();
+        assertEquals(MISSING, map.get(0));
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,58 @@
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KMeansTest {
+    private static PointSet colors() throws IOException {
+        return new DataSet(ColorHistogram.fromImage(ImageLoader.read(new File("src/main/resources/pine_tree.png")))).toPointSet();
+    }
+
+    // 20 scans the centroids, from KMeans.INDEX_MIN_K on both go through a CentroidIndex
+    @ParameterizedTest
+    @ValueSource(ints = {20, KMeans.INDEX_MIN_K + 8})
+    void hamerlyFindsTheClustersLloydFinds(int K) throws IOException {
+        PointSet points = colors();
+
+        KMeansResult lloyd = new KMeans(K).setAlgorithm(KMeans.Algorithm.LLOYD)
+                .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7)).run(points);
+        KMeansResult hamerly = new KMeans(K).setAlgorithm(KMeans.Algorithm.HAMERLY)
+                .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7)).run(points);
+
+        assertArrayEquals(lloyd.getAssignments(), hamerly.getAssignments());
+        assertArrayEquals(lloyd.getCentroids(), hamerly.getCentroids());
+        assertEquals(lloyd.getIterations(), hamerly.getIterations());
+    }
+
+    // the fixed chunks and merge tree make the threads invisible in the result
+    @ParameterizedTest
+    @EnumSource(KMeans.Algorithm.class)
+    void threadsDoNotChangeTheResult(KMeans.Algorithm algorithm) throws IOException {
+        PointSet points = colors();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            KMeansResult sequential = new KMeans(20).setAlgorithm(algorithm).setParallelism(1)
+                    .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7)).run(points);
+            KMeansResult parallel = new KMeans(20).setAlgorithm(algorithm).setParallelism(4)
+                    .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7)).run(points);
+            KMeansResult pooled = new KMeans(20).setAlgorithm(algorithm).setPool(pool)
+                    .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7)).run(points);
+
+            assertArrayEquals(sequential.getAssignments(), parallel.getAssignments());
+            assertArrayEquals(sequential.getCentroids(), parallel.getCentroids());
+            assertArrayEquals(sequential.getAssignments(), pooled.getAssignments());
+            assertArrayEquals(sequential.getCentroids(), pooled.getCentroids());
+
+            Seeding seeding = new Seeding(Seeding.Method.KMEANS_PARALLEL, 7);
+            assertArrayEquals(seeding.select(points, 20, null), seeding.select(points, 20, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class LayerRendererTest {
+    @Test
+    void drawsTheLayersFillRectDrew() {
+        Random random = new Random(3);
+        ColorHistogram histogram = LayerRendererWorkload.randomHistogram(173, 97, random);
+        int clusters = 5;
+        int[] clusterOfColor = new int[histogram.size()];
+        for (int c = 0; c < clusterOfColor.length; c++) {
+            clusterOfColor[c] = random.nextInt(clusters);
+        }
+
+        LayerRenderer renderer = new LayerRenderer(histogram, clusterOfColor);
+        for (int cluster = 0; cluster < clusters; cluster++) {
+            BufferedImage expected = LayerRendererWorkload.fillRectLayer(histogram, clusterOfColor, cluster);
+            assertArrayEquals(ImageLoader.readARGB(expected), ImageLoader.readARGB(renderer.renderLayer(cluster)), "layer " + cluster);
+        }
+    }
+
+    @Test
+    void keepsTranslucentColors() {
+        int width = 64;
+        int height = 32;
+        Random random = new Random(5);
+        ColorHistogram histogram = new ColorHistogram(width, height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = random.nextInt(256) << 24 | random.nextInt(64) << 16 | random.nextInt(64);
+            }
+            histogram.addPixels(y * width, row, width);
+        }
+        int[] clusterOfColor = new int[histogram.size()];
+        for (int c = 0; c < clusterOfColor.length; c++) {
+            clusterOfColor[c] = c % 3;
+        }
+
+        LayerRenderer renderer = new LayerRenderer(histogram, clusterOfColor);
+        for (int cluster = 0; cluster < 3; cluster++) {
+            BufferedImage expected = LayerRendererWorkload.fillRectLayer(histogram, clusterOfColor, cluster);
+            assertArrayEquals(ImageLoader.readARGB(expected), ImageLoader.readARGB(renderer.renderLayer(cluster)), "layer " + cluster);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/* For benchmarks.LayerRendererBenchmark: the layers of an image of random colors spread
+ * over random clusters, rendered with LayerRenderer and with the Graphics2D fillRect per
+ * pixel loop ColorMap.toImages used to run */
+public class LayerRendererWorkload implements benchmarks.LayerRendererBenchmark.Workload {
+    private ColorHistogram histogram;
+    private int[] clusterOfColor;
+
+    @Override
+    public void setUp(int width, int height, int clusters) {
+        Random random = new Random(42);
+        histogram = randomHistogram(width, height, random);
+        clusterOfColor = new int[histogram.size()];
+        for (int c = 0; c < clusterOfColor.length; c++) {
+            clusterOfColor[c] = random.nextInt(clusters);
+        }
+    }
+
+    @Override
+    public BufferedImage renderAll() {
+        LayerRenderer renderer = new LayerRenderer(histogram, clusterOfColor);
+        for (int cluster : renderer.getClusters()) {
+            renderer.renderLayer(cluster);
+        }
+        return renderer.renderFused();
+    }
+
+    @Override
+    public BufferedImage fillRectLayer() {
+        return fillRectLayer(histogram, clusterOfColor, 0);
+    }
+
+    // opaque colors out of 65536
+    static ColorHistogram randomHistogram(int width, int height, Random random) {
+        ColorHistogram histogram = new ColorHistogram(width, height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = 0xFF000000 | random.nextInt(1 << 16);
+            }
+            histogram.addPixels(y * width, row, width);
+        }
+        return histogram;
+    }
+
+    // what ColorMap.toImages used to do for every layer
+    static BufferedImage fillRectLayer(ColorHistogram histogram, int[] clusterOfColor, int cluster) {
+        int width = histogram.getWidth();
+        BufferedImage image = new BufferedImage(width, histogram.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, width, histogram.getHeight());
+
+        int[] pixels = histogram.getPixelsByColor();
+        int[] offsets = histogram.getPixelOffsets();
+        for (int c = 0; c < histogram.size(); c++) {
+            if (clusterOfColor[c] != cluster) {
+                continue;
+            }
+            for (int p = offsets[c]; p < offsets[c + 1]; p++) {
+                g2d.setColor(new Color(histogram.getColor(c), true));
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.fillRect(pixels[p] % width, pixels[p] / width, 1, 1);
+            }
+        }
+
+        g2d.dispose();
+        return image;
+    }
+}
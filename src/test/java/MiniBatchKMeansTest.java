@@ -0,0 +1,52 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MiniBatchKMeansTest {
+    @Test
+    void sseStaysCloseToTheFullRun() throws IOException {
+        ColorHistogram histogram = ColorHistogram.fromImage(ImageLoader.read(new File("src/main/resources/pine_tree.png")));
+        PointSet points = new DataSet(histogram).toPointSet();
+        int K = 20;
+
+        KMeansResult full = new KMeans(K).setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7)).run(points);
+
+        MiniBatchKMeans miniBatch = new MiniBatchKMeans(K, 7).setBatchSize(2048).setMaxIterations(200);
+        assertEquals(200, miniBatch.partialFit(new ColorMapSampler(histogram)));
+        double[] centroids = miniBatch.getCentroids();
+        int[] assignments = miniBatch.predict(points);
+
+        // a few percent over the full run on this image whatever the seed
+        double SSE = 0.0;
+        for (int i = 0; i < points.size(); i++) {
+            SSE += points.getWeights()[i] * PointSet.squaredDistance(points.getValues(), i, centroids, assignments[i], points.getDimensions());
+        }
+        assertTrue(SSE < full.getSSE() * 1.15, "Mini-batch SSE " + SSE + " against " + full.getSSE() + " for the full run.");
+    }
+
+    @Test
+    void samplerDrawsColorsByPixelCount() {
+        int[] colors = {0xFF000000, 0xFFFF0000, 0xFF0000FF};
+        int[] counts = {1, 2, 7};
+        ColorMapSampler sampler = new ColorMapSampler(new ColorHistogram(10, 1, colors, counts, 3, null));
+
+        int samples = 100_000;
+        double[] batch = new double[samples * 4];
+        sampler.sample(batch, samples, new Random(1));
+
+        int[] drawn = new int[3];
+        for (int i = 0; i < samples; i++) {
+            // RGB attributes are red, green, blue and alpha
+            int color = batch[i * 4] == 255.0 ? 1 : batch[i * 4 + 2] == 255.0 ? 2 : 0;
+            drawn[color]++;
+        }
+        for (int c = 0; c < 3; c++) {
+            assertEquals(counts[c] / 10.0, drawn[c] / (double) samples, 0.01);
+        }
+    }
+}
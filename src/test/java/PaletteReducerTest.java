@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaletteReducerTest {
+    private static ColorHistogram histogram;
+
+    @BeforeAll
+    static void load() throws IOException {
+        histogram = ColorHistogram.fromImage(ImageLoader.read(new File("src/main/resources/pine_tree.png")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {16, 100, 1000, 4096})
+    void reducesToTheTargetAndKeepsEveryPixel(int target) {
+        PaletteReducer.Reduction palette = new PaletteReducer(target).reduce(histogram);
+
+        assertTrue(palette.size() <= target, palette.size() + " colors for a target of " + target);
+        long pixels = 0;
+        for (int b = 0; b < palette.size(); b++) {
+            pixels += palette.getCount(b);
+        }
+        assertEquals((long) histogram.getWidth() * histogram.getHeight(), pixels);
+        for (int c = 0; c < histogram.size(); c++) {
+            int bucket = palette.bucketOf(c);
+            assertTrue(bucket >= 0 && bucket < palette.size());
+        }
+    }
+
+    @Test
+    void colorCountsLeaveTheLabelsOut() {
+        PaletteReducer.Reduction palette = new PaletteReducer(256).reduce(histogram);
+
+        ColorHistogram labelled = palette.toHistogram(histogram);
+        ColorHistogram counts = palette.toColorCounts(histogram);
+
+        assertNull(counts.getLabels());
+        assertEquals(labelled.size(), counts.size());
+        for (int b = 0; b < counts.size(); b++) {
+            assertEquals(labelled.getColor(b), counts.getColor(b));
+            assertEquals(labelled.getCount(b), counts.getCount(b));
+        }
+    }
+
+    @Test
+    void keepsEveryColorWhenTheImageFits() {
+        PaletteReducer.Reduction palette = new PaletteReducer(histogram.size()).reduce(histogram);
+
+        assertEquals(8, palette.getBits());
+        assertEquals(histogram.size(), palette.size());
+    }
+}
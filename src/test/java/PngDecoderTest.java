@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PngDecoderTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"pine_tree.png", "mosaic.png", "tree_sample.png"})
+    void decodesTheBundledImagesLikeImageIO(String image) throws IOException {
+        assertDecodesLikeImageIO(Files.readAllBytes(Paths.get("src/main/resources", image)));
+    }
+
+    // ImageIO writes these as 8 bit RGB, RGBA and 8 bit indexed PNGs
+    @ParameterizedTest
+    @ValueSource(ints = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_BYTE_INDEXED
+    })
+    void decodesWhatImageIOWrites(int type) throws IOException {
+        BufferedImage image = PngEncoderTest.translucent(131, 77, new Random(type));
+        assertDecodesLikeImageIO(encode(ImageLoaderWorkload.convert(image, type)));
+    }
+
+    // 1, 2 and 4 bit palettes, several indices to a byte
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4})
+    void decodesPackedIndices(int bits) throws IOException {
+        int colors = 1 << bits;
+        byte[] reds = new byte[colors];
+        for (int i = 0; i < colors; i++) {
+            reds[i] = (byte) (i * 255 / (colors - 1));
+        }
+        IndexColorModel model = new IndexColorModel(bits, colors, reds, new byte[colors], new byte[colors]);
+        BufferedImage image = new BufferedImage(37, 11, BufferedImage.TYPE_BYTE_BINARY, model);
+        Random random = new Random(bits);
+        for (int y = 0; y < 11; y++) {
+            for (int x = 0; x < 37; x++) {
+                image.getRaster().setSample(x, y, 0, random.nextInt(colors));
+            }
+        }
+        assertDecodesLikeImageIO(encode(image));
+    }
+
+    @Test
+    void decodesPngEncoderFilters() throws IOException {
+        BufferedImage image = PngEncoderTest.translucent(90, 45, new Random(17));
+        for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new PngEncoder().setFilter(filter).write(image, out);
+            assertDecodesLikeImageIO(out.toByteArray());
+        }
+    }
+
+    @Test
+    void leavesGrayscaleToImageIO() throws IOException {
+        BufferedImage image = ImageLoaderWorkload.convert(PngEncoderTest.translucent(8, 8, new Random(19)), BufferedImage.TYPE_BYTE_GRAY);
+        try (PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(encode(image)))) {
+            assertFalse(decoder.isSupported());
+            assertThrows(IllegalStateException.class, () -> decoder.readRows(new int[64], 0, 8));
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() {
+        assertThrows(IOException.class, () -> new PngDecoder(new ByteArrayInputStream("GIF89a, not a PNG".getBytes())));
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    // rows in bands of uneven sizes, as TileReader asks for them
+    private static void assertDecodesLikeImageIO(byte[] png) throws IOException {
+        int[] expected = ImageLoader.readARGB(ImageIO.read(new ByteArrayInputStream(png)));
+
+        try (PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(png))) {
+            assertTrue(decoder.isSupported());
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            int[] argb = new int[width * height];
+            for (int y = 0, rows = 1; y < height; y += rows, rows = rows % 5 + 1) {
+                decoder.readRows(argb, y * width, Math.min(rows, height - y));
+            }
+            assertArrayEquals(expected, argb);
+        }
+    }
+}
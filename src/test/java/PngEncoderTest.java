@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PngEncoderTest {
+    @ParameterizedTest
+    @EnumSource(PngEncoder.Filter.class)
+    void imageIOReadsBackTheImage(PngEncoder.Filter filter) throws IOException {
+        BufferedImage image = ImageLoader.read(new File("src/main/resources/pine_tree.png"));
+        BufferedImage translucent = translucent(157, 83, new Random(11));
+
+        for (int level : new int[]{0, 1, Deflater.DEFAULT_COMPRESSION, 9}) {
+            PngEncoder encoder = new PngEncoder().setFilter(filter).setCompressionLevel(level);
+            assertArrayEquals(ImageLoader.readARGB(image), roundTrip(encoder, image), "level " + level);
+            assertArrayEquals(ImageLoader.readARGB(translucent), roundTrip(encoder, translucent), "level " + level);
+        }
+    }
+
+    @Test
+    void writesRowsInBands() throws IOException {
+        BufferedImage image = translucent(64, 50, new Random(13));
+        int[] argb = ImageLoader.readARGB(image);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PngEncoder.RowWriter writer = new PngEncoder().open(out, 64, 50)) {
+            // bands of uneven sizes, the last one cut short
+            for (int y = 0, rows = 1; y < 50; y += rows, rows = rows % 7 + 1) {
+                int count = Math.min(rows, 50 - y);
+                writer.writeRows(argb, y * 64, count);
+            }
+        }
+
+        assertArrayEquals(argb, ImageLoader.readARGB(ImageIO.read(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    void refusesRowsPastTheHeight() throws IOException {
+        try (PngEncoder.RowWriter writer = new PngEncoder().open(new ByteArrayOutputStream(), 4, 2)) {
+            writer.writeRows(new int[8], 0, 2);
+            assertThrows(IllegalStateException.class, () -> writer.writeRows(new int[4], 0, 1));
+        }
+    }
+
+    private static int[] roundTrip(PngEncoder encoder, BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.write(image, out);
+        return ImageLoader.readARGB(ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    // noise of every alpha, fully transparent pixels keeping their color
+    static BufferedImage translucent(int width, int height, Random random) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,69 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/* For benchmarks.PngEncoderBenchmark: the K layers of an image of src/main/resources
+ * encoded with ImageIO and with PngEncoder, and written by LayerWriter to a temporary
+ * directory */
+public class PngEncoderWorkload implements benchmarks.PngEncoderBenchmark.Workload {
+    private LayerRenderer renderer;
+    private BufferedImage[] layers;
+    private File directory;
+
+    @Override
+    public void setUp(String image, int K) throws IOException {
+        ColorHistogram histogram = ColorHistogram.fromImage(ImageLoader.read(new File("src/main/resources", image)));
+
+        KMeansResult result = new KMeans(K).setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7))
+                .run(new DataSet(histogram).toPointSet());
+        renderer = new LayerRenderer(histogram, result.getAssignments());
+        int[] clusters = renderer.getClusters();
+        layers = new BufferedImage[clusters.length];
+        for (int i = 0; i < clusters.length; i++) {
+            layers[i] = renderer.renderLayer(clusters[i]);
+        }
+        directory = Files.createTempDirectory("png-encoder-benchmark").toFile();
+    }
+
+    @Override
+    public long imageIO() throws IOException {
+        long size = 0;
+        for (BufferedImage layer : layers) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(layer, "png", out);
+            size += out.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long pngEncoder(String filter, int level) throws IOException {
+        PngEncoder encoder = new PngEncoder().setFilter(PngEncoder.Filter.valueOf(filter)).setCompressionLevel(level);
+        long size = 0;
+        for (BufferedImage layer : layers) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoder.write(layer, out);
+            size += out.size();
+        }
+        return size;
+    }
+
+    @Override
+    public File layerWriter(int threads) throws IOException {
+        new LayerWriter(directory).setThreads(threads).setMaxBuffers(threads + 1).write(renderer);
+        return directory;
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        try (Stream<File> files = Files.walk(directory.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile)) {
+            files.forEach(File::delete);
+        }
+    }
+}
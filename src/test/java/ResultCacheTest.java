@@ -0,0 +1,157 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultCacheTest {
+    private static final String PARAMETERS = "K=3;seed=7";
+
+    @TempDir
+    Path directory;
+
+    // labels take 1 byte below 255 colors, 2 below 65535 and 4 from there
+    @ParameterizedTest
+    @ValueSource(ints = {1, 254, 255, 65534, 65535})
+    void histogramsComeBackWhateverTheLabelWidth(int colors) throws IOException {
+        ResultCache cache = new ResultCache(directory, 1L << 30);
+        ColorHistogram histogram = histogram(colors);
+
+        cache.putHistogram("a", histogram);
+        ColorHistogram read = cache.getHistogram("a");
+
+        assertNotNull(read);
+        assertEquals(histogram.getWidth(), read.getWidth());
+        assertEquals(histogram.getHeight(), read.getHeight());
+        assertEquals(histogram.size(), read.size());
+        for (int c = 0; c < histogram.size(); c++) {
+            assertEquals(histogram.getColor(c), read.getColor(c));
+            assertEquals(histogram.getCount(c), read.getCount(c));
+        }
+        assertArrayEquals(histogram.getLabels(), read.getLabels());
+    }
+
+    @Test
+    void resultsComeBack() throws IOException {
+        ResultCache cache = new ResultCache(directory, 1L << 30);
+        KMeansResult result = result(1000, 0.5);
+
+        cache.putResult("a", PARAMETERS, result, 4);
+        KMeansResult read = cache.getResult("a", PARAMETERS);
+
+        assertNotNull(read);
+        assertArrayEquals(result.getCentroids(), read.getCentroids());
+        assertArrayEquals(result.getAssignments(), read.getAssignments());
+        assertEquals(result.getSSE(), read.getSSE());
+        assertEquals(result.getIterations(), read.getIterations());
+        assertEquals(result.isConverged(), read.isConverged());
+        assertNull(cache.getResult("a", "K=4;seed=7"));
+        assertNull(cache.getResult("b", PARAMETERS));
+    }
+
+    @Test
+    void truncatedEntriesAreMissesAndGetDeleted() throws IOException {
+        ResultCache cache = new ResultCache(directory, 1L << 30);
+        cache.putHistogram("a", histogram(300));
+        cache.putResult("a", PARAMETERS, result(1000, 0.5), 4);
+
+        for (Path entry : entries()) {
+            try (RandomAccessFile file = new RandomAccessFile(entry.toFile(), "rw")) {
+                file.setLength(file.length() - 3);
+            }
+        }
+
+        assertNull(cache.getHistogram("a"));
+        assertNull(cache.getResult("a", PARAMETERS));
+        assertEquals(0, entries().length);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntriesFirst() throws IOException {
+        KMeansResult result = result(1000, 0.5);
+        ResultCache cache = new ResultCache(directory, 1L << 30);
+        cache.putResult("a", PARAMETERS, result, 4);
+        long entryBytes = Files.size(entries()[0]);
+        // room for two entries, not three
+        cache = new ResultCache(directory, entryBytes * 5 / 2);
+
+        cache.putResult("b", PARAMETERS, result, 4);
+        age(-3000);
+        age(entryOf("b"), -2000);
+        cache.putResult("c", PARAMETERS, result, 4);
+
+        assertNull(cache.getResult("a", PARAMETERS));
+        assertEquals(2, entries().length);
+
+        // reading b makes it the most recently used, c then goes first
+        age(entryOf("c"), -1000);
+        age(entryOf("b"), -2000);
+        assertNotNull(cache.getResult("b", PARAMETERS));
+        cache.putResult("d", PARAMETERS, result, 4);
+
+        assertTrue(Files.exists(entryOf("b")));
+        assertTrue(Files.exists(entryOf("d")));
+        assertFalse(Files.exists(entryOf("c")));
+    }
+
+    // colors pixels of distinct colors and a last pixel without a color
+    private static ColorHistogram histogram(int colors) {
+        ColorHistogram histogram = new ColorHistogram(colors + 1, 1);
+        int[] row = new int[colors];
+        for (int i = 0; i < colors; i++) {
+            row[i] = 0xFF000000 | i * 251;
+        }
+        histogram.addPixels(0, row, colors);
+        return histogram;
+    }
+
+    private static KMeansResult result(int points, double SSE) {
+        double[] centroids = new double[3 * 4];
+        for (int i = 0; i < centroids.length; i++) {
+            centroids[i] = i / 3.0;
+        }
+        int[] assignments = new int[points];
+        for (int i = 0; i < points; i++) {
+            assignments[i] = i % 3;
+        }
+        return new KMeansResult(centroids, assignments, SSE, 12, true);
+    }
+
+    private Path[] entries() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> !file.toString().endsWith(".tmp")).toArray(Path[]::new);
+        }
+    }
+
+    private Path entryOf(String hash) throws IOException {
+        for (Path entry : entries()) {
+            if (entry.getFileName().toString().startsWith(hash + "-")) {
+                return entry;
+            }
+        }
+        return directory.resolve(hash + "-missing");
+    }
+
+    private void age(long seconds) throws IOException {
+        for (Path entry : entries()) {
+            age(entry, seconds);
+        }
+    }
+
+    private static void age(Path entry, long seconds) throws IOException {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis() + seconds * 1000));
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/* For benchmarks.SeedingBenchmark: seeding K centroids over random opaque colors */
+public class SeedingWorkload implements benchmarks.SeedingBenchmark.Workload {
+    private PointSet points;
+    private Seeding seeding;
+    private int K;
+    private ForkJoinPool pool;
+
+    @Override
+    public void setUp(String method, int K, int colors, int threads) {
+        seeding = new Seeding(Seeding.Method.valueOf(method), 7);
+        this.K = K;
+
+        Random random = new Random(42);
+        double[] values = new double[colors * 4];
+        for (int i = 0; i < colors; i++) {
+            values[i * 4] = random.nextInt(256);
+            values[i * 4 + 1] = random.nextInt(256);
+            values[i * 4 + 2] = random.nextInt(256);
+            values[i * 4 + 3] = 255;
+        }
+        points = new PointSet(new String[]{"Red", "Green", "Blue", "Alpha"}, values);
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    @Override
+    public double[] select() {
+        return seeding.select(points, K, pool);
+    }
+
+    @Override
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
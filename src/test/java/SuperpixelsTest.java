@@ -0,0 +1,21 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuperpixelsTest {
+    @Test
+    void layersOfRegionsFallIntoFewerPieces() throws IOException {
+        BufferedImage image = ImageLoader.read(new File("src/main/resources/pine_tree.png"));
+        ColorHistogram histogram = ColorHistogram.fromImage(image);
+
+        int colors = SuperpixelsWorkload.pieces(SuperpixelsWorkload.clusterColors(histogram, 20, null), image.getWidth());
+        int regions = SuperpixelsWorkload.pieces(SuperpixelsWorkload.clusterRegions(histogram, 20, 500, null), image.getWidth());
+
+        // tens of thousands of specks against a few hundred regions
+        assertTrue(regions * 10 < colors, regions + " pieces for regions, " + colors + " for colors");
+    }
+}
@@ -0,0 +1,105 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/* For benchmarks.SuperpixelsBenchmark: an image of src/main/resources tiled up to a
+ * given size, split into K layers by clustering its colors and by clustering
+ * superpixels */
+public class SuperpixelsWorkload implements benchmarks.SuperpixelsBenchmark.Workload {
+    private ColorHistogram histogram;
+    private int K;
+    private int regions;
+    private ForkJoinPool pool;
+
+    @Override
+    public void setUp(String image, int width, int height, int K, int regions, int threads) throws IOException {
+        BufferedImage source = ImageLoader.read(new File("src/main/resources", image));
+        histogram = tiled(source, width, height);
+        this.K = K;
+        this.regions = regions;
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    @Override
+    public int[] colors() {
+        return clusterColors(histogram, K, pool);
+    }
+
+    @Override
+    public int[] regions() {
+        return clusterRegions(histogram, K, regions, pool);
+    }
+
+    @Override
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    static ColorHistogram tiled(BufferedImage source, int width, int height) {
+        int[] argb = ImageLoader.readARGB(source);
+        ColorHistogram histogram = new ColorHistogram(width, height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = argb[(y % source.getHeight()) * source.getWidth() + x % source.getWidth()];
+            }
+            histogram.addPixels(y * width, row, width);
+        }
+        return histogram;
+    }
+
+    static int[] clusterColors(ColorHistogram histogram, int K, ForkJoinPool pool) {
+        KMeansResult colors = new KMeans(K).setAlgorithm(KMeans.Algorithm.HAMERLY).setPool(pool)
+                .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7))
+                .run(new DataSet(histogram, ColorSpace.OKLAB).toPointSet());
+        int[] labels = histogram.getLabels();
+        int[] clusters = new int[labels.length];
+        for (int p = 0; p < labels.length; p++) {
+            clusters[p] = colors.getAssignments()[labels[p]];
+        }
+        return clusters;
+    }
+
+    static int[] clusterRegions(ColorHistogram histogram, int K, int regions, ForkJoinPool pool) {
+        Superpixels.Segmentation segmentation = new Superpixels(regions).setColorSpace(ColorSpace.OKLAB).setPool(pool).segment(histogram);
+        KMeansResult result = new KMeans(Math.min(K, segmentation.getRegionCount())).setAlgorithm(KMeans.Algorithm.HAMERLY).setPool(pool)
+                .setSeeding(new Seeding(Seeding.Method.KMEANS_PLUS_PLUS, 7))
+                .run(segmentation.toPointSet());
+        return segmentation.toPixelClusters(result.getAssignments());
+    }
+
+    // 4-connected pieces of equal cluster, fewer pieces is more contiguous layers
+    static int pieces(int[] clusters, int width) {
+        int[] piece = new int[clusters.length];
+        Arrays.fill(piece, -1);
+        int[] queue = new int[clusters.length];
+        int count = 0;
+
+        for (int start = 0; start < clusters.length; start++) {
+            if (piece[start] >= 0) {
+                continue;
+            }
+            int size = 0;
+            queue[size++] = start;
+            piece[start] = count;
+            for (int head = 0; head < size; head++) {
+                int p = queue[head];
+                int x = p % width;
+                int[] neighbours = {x > 0 ? p - 1 : -1, x < width - 1 ? p + 1 : -1, p - width, p + width};
+                for (int n : neighbours) {
+                    if (n >= 0 && n < clusters.length && piece[n] < 0 && clusters[n] == clusters[start]) {
+                        piece[n] = count;
+                        queue[size++] = n;
+                    }
+                }
+            }
+            count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of nearest centroid lookups of every color of an image by scanning the
+ * centroids and through a CentroidIndex, for K from 8 to 512 k-means++ centroids
+ * (CentroidIndexWorkload). The crossover sets KMeans.INDEX_MIN_K. CentroidIndexTest
+ * checks both find the same centroids.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="CentroidIndexBenchmark -p K=24,32,48" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class CentroidIndexBenchmark {
+    @Param({"pine_tree.png"})
+    public String image;
+
+    @Param({"8", "16", "32", "64", "128", "256", "512"})
+    public int K;
+
+    /* Implemented by CentroidIndexWorkload in the default package, like Stages. Both
+     * return the nearest centroid of every color */
+    public interface Workload {
+        void setUp(String image, int K) throws IOException;
+
+        int[] scan();
+
+        int[] index();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("CentroidIndexWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(image, K);
+    }
+
+    @Benchmark
+    public int[] scan() {
+        return workload.scan();
+    }
+
+    @Benchmark
+    public int[] index() {
+        return workload.index();
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of reading and writing a data set of random colors in every format: the
+ * CSV read with String.split and Double.parseDouble as DataSet used to, the same file
+ * through CsvParser, createCsvOutput, and DataSetFile's columnar binary format
+ * (DataSetIoWorkload). CsvParserTest and DataSetFileTest check the readers give the same
+ * values.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="DataSetIoBenchmark -p records=100000" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class DataSetIoBenchmark {
+    @Param({"2000000"})
+    public int records;
+
+    /* Implemented by DataSetIoWorkload in the default package, like Stages. The readers
+     * return the values or the DataSet, the writers the file they wrote */
+    public interface Workload {
+        /* Writes the CSV and binary files of the records to temporary files */
+        void setUp(int records) throws IOException;
+
+        double[] split() throws IOException;
+
+        Object csvParser() throws IOException;
+
+        File createCsvOutput() throws IOException;
+
+        File writeBinary() throws IOException;
+
+        Object readBinary() throws IOException;
+
+        /* Deletes the temporary files */
+        void tearDown() throws IOException;
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("DataSetIoWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(records);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public double[] split() throws IOException {
+        return workload.split();
+    }
+
+    @Benchmark
+    public Object csvParser() throws IOException {
+        return workload.csvParser();
+    }
+
+    @Benchmark
+    public File createCsvOutput() throws IOException {
+        return workload.createCsvOutput();
+    }
+
+    @Benchmark
+    public File writeBinary() throws IOException {
+        return workload.writeBinary();
+    }
+
+    @Benchmark
+    public Object readBinary() throws IOException {
+        return workload.readBinary();
+    }
+}
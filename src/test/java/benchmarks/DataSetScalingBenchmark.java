@@ -0,0 +1,76 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of the DataSet phases from 1k to 1M records (DataSetScalingWorkload).
+ * With random access storage the time per record, the score over the number of
+ * records, has to stay flat as the data set grows.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="DataSetScalingBenchmark.totalSSE" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class DataSetScalingBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int records;
+
+    @Param({"20"})
+    public int K;
+
+    /* Implemented by DataSetScalingWorkload in the default package, like Stages. build
+     * and assign return the DataSet, a type this package can not name */
+    public interface Workload {
+        void setUp(int records, int K);
+
+        Object build();
+
+        Object assign();
+
+        LinkedList<HashMap<String, Double>> recomputeCentroids();
+
+        Double totalSSE();
+
+        HashMap<Integer, List<Color>> createOutputColorMap();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("DataSetScalingWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(records, K);
+    }
+
+    @Benchmark
+    public Object build() {
+        return workload.build();
+    }
+
+    @Benchmark
+    public Object assign() {
+        return workload.assign();
+    }
+
+    @Benchmark
+    public Object recomputeCentroids() {
+        return workload.recomputeCentroids();
+    }
+
+    @Benchmark
+    public Double totalSSE() {
+        return workload.totalSSE();
+    }
+
+    @Benchmark
+    public Object createOutputColorMap() {
+        return workload.createOutputColorMap();
+    }
+}
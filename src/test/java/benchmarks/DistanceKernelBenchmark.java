@@ -0,0 +1,55 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of the nearest centroid scan of every color of an image with the scalar
+ * DistanceKernel and with the one DistanceKernel.get() chose, for K from 4 to 1024
+ * k-means++ centroids (DistanceKernelWorkload). Against the index scores of
+ * CentroidIndexBenchmark it sets the kernels' getIndexMinK. DistanceKernelTest checks
+ * both kernels agree. Both are the scalar kernel unless built and run with the vector
+ * profile:
+ *   mvn -Pjmh,vector test-compile exec:exec -Djmh.args="DistanceKernelBenchmark" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class DistanceKernelBenchmark {
+    @Param({"pine_tree.png"})
+    public String image;
+
+    @Param({"4", "16", "64", "256", "1024"})
+    public int K;
+
+    /* Implemented by DistanceKernelWorkload in the default package, like Stages. Both
+     * return the nearest centroid of every color */
+    public interface Workload {
+        void setUp(String image, int K) throws IOException;
+
+        int[] scalar();
+
+        int[] kernel();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("DistanceKernelWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(image, K);
+    }
+
+    @Benchmark
+    public int[] scalar() {
+        return workload.scalar();
+    }
+
+    @Benchmark
+    public int[] kernel() {
+        return workload.kernel();
+    }
+}
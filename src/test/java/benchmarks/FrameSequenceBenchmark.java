@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of clustering 10 frames of a panned, brightening image one by one from
+ * scratch against warm starting every frame from the previous one with FrameSequence
+ * (FrameSequenceWorkload). FrameSequenceTest checks the warm start takes fewer
+ * iterations and keeps the layer numbering.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="FrameSequenceBenchmark -p frames=30" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class FrameSequenceBenchmark {
+    @Param({"pine_tree.png"})
+    public String image;
+
+    @Param({"20"})
+    public int K;
+
+    @Param({"10"})
+    public int frames;
+
+    /* Implemented by FrameSequenceWorkload in the default package, like Stages. Both
+     * return the KMeansResult of the last frame */
+    public interface Workload {
+        void setUp(String image, int K, int frames) throws IOException;
+
+        Object fromScratch();
+
+        Object warmStarted();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("FrameSequenceWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(image, K, frames);
+    }
+
+    @Benchmark
+    public Object fromScratch() {
+        return workload.fromScratch();
+    }
+
+    @Benchmark
+    public Object warmStarted() {
+        return workload.warmStarted();
+    }
+}
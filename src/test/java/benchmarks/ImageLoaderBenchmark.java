@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of reading the pixels of an image per pixel with getRGB(x, y), as
+ * ColorMap and Main used to, against ImageLoader.readARGB, for every image type ImageIO
+ * commonly returns (ImageLoaderWorkload). ImageLoaderTest checks both read the same.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="ImageLoaderBenchmark -p type=INT_RGB" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class ImageLoaderBenchmark {
+    @Param({"pine_tree.png"})
+    public String image;
+
+    @Param({"INT_ARGB", "INT_RGB", "3BYTE_BGR", "4BYTE_ABGR", "BYTE_INDEXED"})
+    public String type;
+
+    /* Implemented by ImageLoaderWorkload in the default package, like Stages */
+    public interface Workload {
+        /* type is a TYPE_ constant of BufferedImage without its prefix */
+        void setUp(String image, String type) throws IOException, ReflectiveOperationException;
+
+        int[] getRGB();
+
+        int[] readARGB();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("ImageLoaderWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(image, type);
+    }
+
+    @Benchmark
+    public int[] getRGB() {
+        return workload.getRGB();
+    }
+
+    @Benchmark
+    public int[] readARGB() {
+        return workload.readARGB();
+    }
+}
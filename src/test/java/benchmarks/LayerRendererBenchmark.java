@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of rendering every cluster layer of a 3840x2160 image and the fused
+ * image with LayerRenderer, against a single layer drawn with the Graphics2D fillRect
+ * per pixel loop it replaced, one layer only as it is that slow (LayerRendererWorkload).
+ * LayerRendererTest checks both draw the same layers.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="LayerRendererBenchmark -p clusters=50" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class LayerRendererBenchmark {
+    @Param({"3840"})
+    public int width;
+
+    @Param({"2160"})
+    public int height;
+
+    @Param({"20"})
+    public int clusters;
+
+    /* Implemented by LayerRendererWorkload in the default package, like Stages */
+    public interface Workload {
+        void setUp(int width, int height, int clusters);
+
+        /* Every layer, then the fused image */
+        BufferedImage renderAll();
+
+        /* The layer of cluster 0 */
+        BufferedImage fillRectLayer();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("LayerRendererWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(width, height, clusters);
+    }
+
+    @Benchmark
+    public BufferedImage renderAll() {
+        return workload.renderAll();
+    }
+
+    @Benchmark
+    public BufferedImage fillRectLayer() {
+        return workload.fillRectLayer();
+    }
+}
@@ -0,0 +1,89 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of encoding the K layers of an image with ImageIO and with PngEncoder at
+ * every filter and a few compression levels, and of writing them with LayerWriter for 1
+ * to 4 threads (PngEncoderWorkload). The parameters of each are in their own state, so
+ * ImageIO runs once and not once per filter and level. PngEncoderTest checks the files
+ * decode back to the layers.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="PngEncoderBenchmark.pngEncoder -p filter=PAETH" */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class PngEncoderBenchmark {
+    /* Implemented by PngEncoderWorkload in the default package, like Stages. The
+     * encoders return the total size of the layers */
+    public interface Workload {
+        void setUp(String image, int K) throws IOException;
+
+        long imageIO() throws IOException;
+
+        /* filter is the name of a PngEncoder.Filter */
+        long pngEncoder(String filter, int level) throws IOException;
+
+        /* Writes the layers to a temporary directory and returns it */
+        File layerWriter(int threads) throws IOException;
+
+        /* Deletes the temporary directory */
+        void tearDown() throws IOException;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Layers {
+        @Param({"pine_tree.png"})
+        public String image;
+
+        @Param({"20"})
+        public int K;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = (Workload) Class.forName("PngEncoderWorkload").getDeclaredConstructor().newInstance();
+            workload.setUp(image, K);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            workload.tearDown();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Encoder {
+        @Param({"NONE", "SUB", "UP", "AVERAGE", "PAETH", "ADAPTIVE"})
+        public String filter;
+
+        @Param({"1", "6", "9"})
+        public int level;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Writer {
+        @Param({"1", "2", "4"})
+        public int threads;
+    }
+
+    @Benchmark
+    public long imageIO(Layers layers) throws IOException {
+        return layers.workload.imageIO();
+    }
+
+    @Benchmark
+    public long pngEncoder(Layers layers, Encoder encoder) throws IOException {
+        return layers.workload.pngEncoder(encoder.filter, encoder.level);
+    }
+
+    @Benchmark
+    public File layerWriter(Layers layers, Writer writer) throws IOException {
+        return layers.workload.layerWriter(writer.threads);
+    }
+}
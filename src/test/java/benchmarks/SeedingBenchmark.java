@@ -0,0 +1,58 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of k-means++ and k-means|| seeding of K = 256 centroids over 1M random
+ * colors, on one thread and on a pool (SeedingWorkload).
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="SeedingBenchmark -p threads=8" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class SeedingBenchmark {
+    @Param({"KMEANS_PLUS_PLUS", "KMEANS_PARALLEL"})
+    public String method;
+
+    @Param({"256"})
+    public int K;
+
+    @Param({"1000000"})
+    public int colors;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    /* Implemented by SeedingWorkload in the default package, like Stages */
+    public interface Workload {
+        /* method is the name of a Seeding.Method */
+        void setUp(String method, int K, int colors, int threads);
+
+        /* The centroids */
+        double[] select();
+
+        /* Shuts the pool down */
+        void tearDown();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("SeedingWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(method, K, colors, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public double[] select() {
+        return workload.select();
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of every stage of the pipeline on its own, on the bundled images and on
+ * synthetic ones of growing size (see BenchmarkStages). Run with the GC profiler, which
+ * adds the allocation rate and bytes allocated per operation of every stage:
+ *   mvn -Pjmh test-compile exec:exec
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="StageBenchmark.histogram -p image=pine_tree.png"
+ * Images that are not in the tree fail their setup and JMH goes on with the others. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class StageBenchmark {
+    @Param({"pine_tree.png", "mosaic.png", "synthetic-512", "synthetic-1024", "synthetic-2048"})
+    public String image;
+
+    @Param({"20"})
+    public int K;
+
+    private Stages stages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stages = (Stages) Class.forName("BenchmarkStages").getDeclaredConstructor().newInstance();
+        stages.load(image, K);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return stages.decode();
+    }
+
+    @Benchmark
+    public Object histogram() {
+        return stages.histogram();
+    }
+
+    @Benchmark
+    public Object reducePalette() {
+        return stages.reducePalette();
+    }
+
+    @Benchmark
+    public Object seed() {
+        return stages.seed();
+    }
+
+    @Benchmark
+    public Object lloydIterations() {
+        return stages.iterate("LLOYD");
+    }
+
+    @Benchmark
+    public Object hamerlyIterations() {
+        return stages.iterate("HAMERLY");
+    }
+
+    @Benchmark
+    public Object assignLayers() {
+        return stages.assignLayers();
+    }
+
+    @Benchmark
+    public Object renderLayer() {
+        return stages.renderLayer();
+    }
+
+    @Benchmark
+    public Object encodeLayer() throws IOException {
+        return stages.encodeLayer();
+    }
+}
@@ -0,0 +1,31 @@
+package benchmarks;
+
+import java.io.IOException;
+
+/* The pipeline stages measured by StageBenchmark. JMH only runs benchmarks that are in
+ * a package and the pipeline is in the default package, which named packages can not
+ * see, so the stages are implemented by BenchmarkStages (default package) behind this
+ * interface. Every stage returns its result for JMH to consume. */
+public interface Stages {
+    /* Prepares the input of every stage for the image: a file of src/main/resources or
+     * synthetic-<size> for a generated size x size image */
+    void load(String image, int K) throws IOException;
+
+    Object decode() throws IOException;
+
+    Object histogram();
+
+    Object reducePalette();
+
+    Object seed();
+
+    /* A fixed number of K-Means iterations from the same seeds, LLOYD or HAMERLY */
+    Object iterate(String algorithm);
+
+    /* The layer of every pixel, which is the LayerRenderer */
+    Object assignLayers();
+
+    Object renderLayer();
+
+    Object encodeLayer() throws IOException;
+}
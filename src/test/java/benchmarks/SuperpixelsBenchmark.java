@@ -0,0 +1,74 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JMH benchmark of splitting an image tiled up to 3840x2160 into 20 layers by
+ * clustering its colors against clustering 2000 superpixels, segmentation included
+ * (SuperpixelsWorkload). SuperpixelsTest checks the superpixel layers fall apart into
+ * fewer pieces.
+ *   mvn -Pjmh test-compile exec:exec -Djmh.args="SuperpixelsBenchmark -p threads=8" */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class SuperpixelsBenchmark {
+    @Param({"pine_tree.png"})
+    public String image;
+
+    @Param({"3840"})
+    public int width;
+
+    @Param({"2160"})
+    public int height;
+
+    @Param({"20"})
+    public int K;
+
+    @Param({"2000"})
+    public int regions;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    /* Implemented by SuperpixelsWorkload in the default package, like Stages. Both
+     * return the cluster of every pixel */
+    public interface Workload {
+        /* regions is the number of superpixels */
+        void setUp(String image, int width, int height, int K, int regions, int threads) throws IOException;
+
+        int[] colors();
+
+        int[] regions();
+
+        /* Shuts the pool down */
+        void tearDown();
+    }
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("SuperpixelsWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(image, width, height, K, regions, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public int[] colors() {
+        return workload.colors();
+    }
+
+    @Benchmark
+    public int[] regions() {
+        return workload.regions();
+    }
+}